@@ -0,0 +1,339 @@
+package com.flansmod.warforge.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.flansmod.warforge.common.DimChunkPos;
+import com.flansmod.warforge.common.WarForgeMod;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+// Builds claim border meshes off the render thread.
+// The client thread snapshots which blocks along the chunk's edges are air into bitmasks, which is all the mesh depends on,
+// then a single background thread turns that into vertex data. The render thread collects finished meshes with pollFinished
+// and uploads them, so it never touches the world per border column or builds geometry itself.
+// Meshes carry their faction colour per vertex and are placed relative to their region (see REGION_CHUNKS) rather than
+// their chunk, so the renderer can join every mesh of one colour in a region into a single buffer and draw it in one call
+public class BorderMesher
+{
+	public static final int SIDE_NORTH = 1;
+	public static final int SIDE_EAST = 1 << 1;
+	public static final int SIDE_SOUTH = 1 << 2;
+	public static final int SIDE_WEST = 1 << 3;
+
+	private static final int HEIGHT = 256;
+	// One bit per block of a 16 wide, 256 tall chunk edge, bit (y * 16 + i)
+	private static final int EDGE_LONGS = 16 * HEIGHT / 64;
+	private static final int INITIAL_BUFFER_BYTES = 1 << 16;
+	// Regions are this many chunks across. Small enough that culling whole regions stays close to per chunk culling
+	public static final int REGION_CHUNKS = 4;
+
+	public static class Snapshot
+	{
+		public final DimChunkPos pos;
+		public final int sides;
+		public final int colour;
+		// Along x at z = 0 and z = 15, then along z at x = 0 and x = 15
+		final long[] northAir = new long[EDGE_LONGS];
+		final long[] southAir = new long[EDGE_LONGS];
+		final long[] westAir = new long[EDGE_LONGS];
+		final long[] eastAir = new long[EDGE_LONGS];
+
+		private Snapshot(DimChunkPos pos, int sides, int colour)
+		{
+			this.pos = pos;
+			this.sides = sides;
+			this.colour = colour;
+		}
+	}
+
+	public static class Mesh
+	{
+		public final DimChunkPos pos;
+		public final long generation;
+		public final int colour;
+		// POSITION_TEX_COLOR quads in region local coordinates, ready to be appended to a batch with addVertexData
+		public final int[] vertexData;
+
+		private Mesh(DimChunkPos pos, long generation, int colour, int[] vertexData)
+		{
+			this.pos = pos;
+			this.generation = generation;
+			this.colour = colour;
+			this.vertexData = vertexData;
+		}
+	}
+
+	private ExecutorService executor = null;
+	private final ConcurrentLinkedQueue<Mesh> finished = new ConcurrentLinkedQueue<Mesh>();
+	// Only touched by the mesher thread
+	private BufferBuilder workerBuffer = null;
+
+	// Client thread. Reads straight from the chunk, skipping sections that are entirely air
+	public static Snapshot takeSnapshot(World world, DimChunkPos pos, int sides, int colour)
+	{
+		Snapshot snapshot = new Snapshot(pos, sides, colour);
+		if(sides == 0)
+			return snapshot;
+
+		Chunk chunk = world.getChunk(pos.x, pos.z);
+		ExtendedBlockStorage[] storageArray = chunk.getBlockStorageArray();
+		BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
+		for(int section = 0; section < storageArray.length; section++)
+		{
+			ExtendedBlockStorage storage = storageArray[section];
+			boolean empty = storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty();
+			for(int y = section * 16; y < section * 16 + 16; y++)
+			{
+				for(int i = 0; i < 16; i++)
+				{
+					int bit = y * 16 + i;
+					if((sides & SIDE_NORTH) != 0 && (empty || isAir(world, chunk, blockPos.setPos(pos.getXStart() + i, y, pos.getZStart()))))
+						snapshot.northAir[bit >> 6] |= 1L << bit;
+					if((sides & SIDE_SOUTH) != 0 && (empty || isAir(world, chunk, blockPos.setPos(pos.getXStart() + i, y, pos.getZEnd()))))
+						snapshot.southAir[bit >> 6] |= 1L << bit;
+					if((sides & SIDE_WEST) != 0 && (empty || isAir(world, chunk, blockPos.setPos(pos.getXStart(), y, pos.getZStart() + i))))
+						snapshot.westAir[bit >> 6] |= 1L << bit;
+					if((sides & SIDE_EAST) != 0 && (empty || isAir(world, chunk, blockPos.setPos(pos.getXEnd(), y, pos.getZStart() + i))))
+						snapshot.eastAir[bit >> 6] |= 1L << bit;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	private static boolean isAir(World world, Chunk chunk, BlockPos pos)
+	{
+		IBlockState state = chunk.getBlockState(pos);
+		return state.getBlock().isAir(state, world, pos);
+	}
+
+	// Meshes finish in any order, so callers tag each request with a generation and ignore any that have been superseded
+	public void submit(final Snapshot snapshot, final long generation)
+	{
+		if(executor == null)
+		{
+			executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "WarForge Border Mesher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		executor.execute(() -> {
+			try
+			{
+				if(workerBuffer == null)
+					workerBuffer = new BufferBuilder(INITIAL_BUFFER_BYTES);
+				finished.add(new Mesh(snapshot.pos, generation, snapshot.colour, build(workerBuffer, snapshot)));
+			}
+			catch(Exception e)
+			{
+				WarForgeMod.LOGGER.error("Failed to build border mesh for " + snapshot.pos, e);
+				// It may have been left mid build
+				workerBuffer = null;
+			}
+		});
+	}
+
+	// Render thread. Returns null once there is nothing left
+	public Mesh pollFinished()
+	{
+		return finished.poll();
+	}
+
+	// Region coordinates, for the batch a chunk's mesh goes in
+	public static int getRegion(int chunkCoord)
+	{
+		return Math.floorDiv(chunkCoord, REGION_CHUNKS);
+	}
+
+	private static boolean isAir(long[] edge, int i, int y)
+	{
+		int bit = y * 16 + i;
+		return (edge[bit >> 6] & (1L << bit)) != 0;
+	}
+
+	private static int[] build(BufferBuilder buffer, Snapshot snapshot)
+	{
+		buffer.begin(7, DefaultVertexFormats.POSITION_TEX_COLOR);
+		// Everything below is written in chunk local coordinates
+		buffer.setTranslation(Math.floorMod(snapshot.pos.x, REGION_CHUNKS) * 16, 0, Math.floorMod(snapshot.pos.z, REGION_CHUNKS) * 16);
+
+		int colour = snapshot.colour;
+		boolean renderNorth = (snapshot.sides & SIDE_NORTH) != 0;
+		boolean renderEast = (snapshot.sides & SIDE_EAST) != 0;
+		boolean renderSouth = (snapshot.sides & SIDE_SOUTH) != 0;
+		boolean renderWest = (snapshot.sides & SIDE_WEST) != 0;
+
+		// North edge, [0,0] -> [16,0] wall
+		if(renderNorth)
+		{
+			// A smidge of semi-translucent wall from [0,0,0] to [2,256,0] offset by 0.25
+			if(renderWest)
+				cornerZ(buffer, 0, 2, 0.25d, colour);
+			// A smidge of semi-translucent wall from [14,0,0] to [16,256,0] offset by 0.25
+			if(renderEast)
+				cornerZ(buffer, 16, 14, 0.25d, colour);
+		}
+
+		// South edge
+		if(renderSouth)
+		{
+			if(renderWest)
+				cornerZ(buffer, 0, 2, 16d - 0.25d, colour);
+			if(renderEast)
+				cornerZ(buffer, 16, 14, 16d - 0.25d, colour);
+		}
+
+		// East edge, [0,0] -> [0,16] wall
+		if(renderWest)
+		{
+			if(renderNorth)
+				cornerX(buffer, 0.25d, 0, 2, colour);
+			if(renderSouth)
+				cornerX(buffer, 0.25d, 16, 14, colour);
+		}
+
+		// West edge
+		if(renderEast)
+		{
+			if(renderNorth)
+				cornerX(buffer, 16d - 0.25d, 0, 2, colour);
+			if(renderSouth)
+				cornerX(buffer, 16d - 0.25d, 16, 14, colour);
+		}
+
+		// Then all the block outlines wherever we go in / out of solid blocks
+		if(renderNorth)
+			outline(buffer, snapshot.northAir, true, 0.125d, colour);
+		if(renderSouth)
+			outline(buffer, snapshot.southAir, true, 16d - 0.125d, colour);
+		if(renderWest)
+			outline(buffer, snapshot.westAir, false, 0.125d, colour);
+		if(renderEast)
+			outline(buffer, snapshot.eastAir, false, 16d - 0.125d, colour);
+
+		buffer.finishDrawing();
+		buffer.setTranslation(0d, 0d, 0d);
+
+		ByteBuffer bytes = buffer.getByteBuffer();
+		int[] vertexData = new int[buffer.getVertexCount() * buffer.getVertexFormat().getIntegerSize()];
+		bytes.asIntBuffer().get(vertexData);
+		buffer.reset();
+		return vertexData;
+	}
+
+	// Outlines one wall, i running along it. Rather than a square per block edge, each unbroken run of the same edge
+	// becomes one long quad with the texture repeating along it
+	private static void outline(BufferBuilder buffer, long[] air, boolean zAligned, double depth, int colour)
+	{
+		// i + 1 edges, run up the wall
+		for(int i = 0; i < 15; i++)
+		{
+			int solidToAirStart = -1;
+			int airToSolidStart = -1;
+			for(int y = 0; y <= HEIGHT; y++)
+			{
+				boolean air0 = y < HEIGHT && isAir(air, i, y);
+				boolean airI1 = y < HEIGHT && isAir(air, i + 1, y);
+				boolean solidToAir = y < HEIGHT && !air0 && airI1;
+				boolean airToSolid = y < HEIGHT && air0 && !airI1;
+
+				if(solidToAir && solidToAirStart < 0)
+					solidToAirStart = y;
+				else if(!solidToAir && solidToAirStart >= 0)
+				{
+					outlineQuad(buffer, zAligned, depth, i + 1, solidToAirStart, 1, y - solidToAirStart, 0, colour);
+					solidToAirStart = -1;
+				}
+
+				if(airToSolid && airToSolidStart < 0)
+					airToSolidStart = y;
+				else if(!airToSolid && airToSolidStart >= 0)
+				{
+					outlineQuad(buffer, zAligned, depth, i, airToSolidStart, 1, y - airToSolidStart, 2, colour);
+					airToSolidStart = -1;
+				}
+			}
+		}
+
+		// y + 1 edges, run along the wall
+		for(int y = 0; y < HEIGHT - 1; y++)
+		{
+			int solidToAirStart = -1;
+			int airToSolidStart = -1;
+			for(int i = 0; i <= 16; i++)
+			{
+				boolean air0 = i < 16 && isAir(air, i, y);
+				boolean airY1 = i < 16 && isAir(air, i, y + 1);
+				boolean solidToAir = i < 16 && !air0 && airY1;
+				boolean airToSolid = i < 16 && air0 && !airY1;
+
+				if(solidToAir && solidToAirStart < 0)
+					solidToAirStart = i;
+				else if(!solidToAir && solidToAirStart >= 0)
+				{
+					outlineQuad(buffer, zAligned, depth, solidToAirStart, y + 1, i - solidToAirStart, 1, 3, colour);
+					solidToAirStart = -1;
+				}
+
+				if(airToSolid && airToSolidStart < 0)
+					airToSolidStart = i;
+				else if(!airToSolid && airToSolidStart >= 0)
+				{
+					outlineQuad(buffer, zAligned, depth, airToSolidStart, y, i - airToSolidStart, 1, 1, colour);
+					airToSolidStart = -1;
+				}
+			}
+		}
+	}
+
+	private static void cornerZ(BufferBuilder buffer, int xOuter, int xInner, double z, int colour)
+	{
+		vertex(buffer, xOuter, 0, z, 64f, 0.5f, colour);
+		vertex(buffer, xInner, 0, z, 64f, 0f, colour);
+		vertex(buffer, xInner, 128, z, 0f, 0f, colour);
+		vertex(buffer, xOuter, 128, z, 0f, 0.5f, colour);
+	}
+
+	private static void cornerX(BufferBuilder buffer, double x, int zOuter, int zInner, int colour)
+	{
+		vertex(buffer, x, 0, zOuter, 64f, 0.5f, colour);
+		vertex(buffer, x, 0, zInner, 64f, 0f, colour);
+		vertex(buffer, x, 128, zInner, 0f, 0f, colour);
+		vertex(buffer, x, 128, zOuter, 0f, 0.5f, colour);
+	}
+
+	// A width x height run of outline squares at i, y on the wall. The unit square texture coordinates are the same as ever,
+	// except u runs along the run for every orientation, so scaling it by the run length repeats the texture once per block
+	private static void outlineQuad(BufferBuilder buffer, boolean zAligned, double depth, int i, int y, int width, int height, int ori, int colour)
+	{
+		int length = ori % 2 == 0 ? height : width;
+		wallVertex(buffer, zAligned, depth, i + 0, y + 0, ((ori + 0) / 2) % 2 * length, ((ori + 3) / 2) % 2, colour);
+		wallVertex(buffer, zAligned, depth, i + width, y + 0, ((ori + 1) / 2) % 2 * length, ((ori + 0) / 2) % 2, colour);
+		wallVertex(buffer, zAligned, depth, i + width, y + height, ((ori + 2) / 2) % 2 * length, ((ori + 1) / 2) % 2, colour);
+		wallVertex(buffer, zAligned, depth, i + 0, y + height, ((ori + 3) / 2) % 2 * length, ((ori + 2) / 2) % 2, colour);
+	}
+
+	private static void wallVertex(BufferBuilder buffer, boolean zAligned, double depth, int i, int y, double u, double v, int colour)
+	{
+		if(zAligned)
+			vertex(buffer, i, y, depth, u, v, colour);
+		else
+			vertex(buffer, depth, y, i, u, v, colour);
+	}
+
+	private static void vertex(BufferBuilder buffer, double x, double y, double z, double u, double v, int colour)
+	{
+		buffer.pos(x, y, z).tex(u, v).color(colour >> 16 & 255, colour >> 8 & 255, colour & 255, 255).endVertex();
+	}
+}
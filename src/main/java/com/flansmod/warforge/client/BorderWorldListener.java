@@ -0,0 +1,62 @@
+package com.flansmod.warforge.client;
+
+import javax.annotation.Nullable;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+
+// Tells the border renderer when blocks change on the client, so only borders whose edge columns changed get rebuilt.
+// Single blocks only count if they went between air and not air, as that is all the border mesh looks at
+public class BorderWorldListener implements IWorldEventListener
+{
+	private final ClientTickHandler handler;
+	private final World world;
+
+	public BorderWorldListener(ClientTickHandler handler, World world)
+	{
+		this.handler = handler;
+		this.world = world;
+	}
+
+	@Override
+	public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags)
+	{
+		if(oldState.getBlock().isAir(oldState, worldIn, pos) != newState.getBlock().isAir(newState, worldIn, pos))
+			handler.markBordersDirty(world.provider.getDimension(), pos.getX(), pos.getZ(), pos.getX(), pos.getZ());
+	}
+
+	// Whole chunks arriving from the server come through here. Single blocks also do, but are handled above
+	@Override
+	public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2)
+	{
+		if(x1 != x2 || z1 != z2)
+			handler.markBordersDirty(world.provider.getDimension(), x1, z1, x2, z2);
+	}
+
+	@Override
+	public void notifyLightSet(BlockPos pos) { }
+	@Override
+	public void playSoundToAllNearExcept(@Nullable EntityPlayer player, SoundEvent soundIn, SoundCategory category, double x, double y, double z, float volume, float pitch) { }
+	@Override
+	public void playRecord(SoundEvent soundIn, BlockPos pos) { }
+	@Override
+	public void spawnParticle(int particleID, boolean ignoreRange, double xCoord, double yCoord, double zCoord, double xSpeed, double ySpeed, double zSpeed, int... parameters) { }
+	@Override
+	public void spawnParticle(int id, boolean ignoreRange, boolean minimiseParticleLevel, double x, double y, double z, double xSpeed, double ySpeed, double zSpeed, int... parameters) { }
+	@Override
+	public void onEntityAdded(Entity entityIn) { }
+	@Override
+	public void onEntityRemoved(Entity entityIn) { }
+	@Override
+	public void broadcastSound(int soundID, BlockPos pos, int data) { }
+	@Override
+	public void playEvent(EntityPlayer player, int type, BlockPos blockPosIn, int data) { }
+	@Override
+	public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) { }
+}
@@ -0,0 +1,100 @@
+package com.flansmod.warforge.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import com.flansmod.warforge.common.DimChunkPos;
+import com.flansmod.warforge.common.blocks.IClaim;
+import com.flansmod.warforge.common.blocks.TileEntityCitadel;
+
+// Claims loaded on the client, by chunk. The claim tile entities keep it up to date themselves as they load, unload and
+// receive data from the server, so nothing needs to search the loaded tile entity list.
+// Chunks whose claim appeared, went away or changed faction or colour are remembered until the border renderer collects them
+public class ClientClaimRegistry
+{
+	private final HashMap<DimChunkPos, IClaim> claims = new HashMap<DimChunkPos, IClaim>();
+	// The faction each claim had when it was last updated, so we can tell when it changes
+	private final HashMap<DimChunkPos, UUID> factions = new HashMap<DimChunkPos, UUID>();
+	private final HashMap<DimChunkPos, Integer> colours = new HashMap<DimChunkPos, Integer>();
+	private final ArrayList<TileEntityCitadel> citadels = new ArrayList<TileEntityCitadel>();
+	private final HashSet<DimChunkPos> changedChunks = new HashSet<DimChunkPos>();
+
+	// Loaded, or new data arrived
+	public void onClaimUpdated(IClaim claim)
+	{
+		DimChunkPos pos = claim.getClaimPos().toChunkPos();
+		IClaim previous = claims.put(pos, claim);
+		UUID previousFaction = factions.put(pos, claim.getFaction());
+		Integer previousColour = colours.put(pos, claim.getColour());
+		if(previous != claim)
+		{
+			if(previous instanceof TileEntityCitadel)
+				citadels.remove(previous);
+			if(claim instanceof TileEntityCitadel)
+				citadels.add((TileEntityCitadel)claim);
+		}
+		if(previous != claim || !claim.getFaction().equals(previousFaction) || previousColour == null || previousColour != claim.getColour())
+			changedChunks.add(pos);
+	}
+
+	// Unloaded or broken
+	public void onClaimRemoved(IClaim claim)
+	{
+		DimChunkPos pos = claim.getClaimPos().toChunkPos();
+		// It may have been replaced already
+		if(claims.get(pos) != claim)
+			return;
+
+		claims.remove(pos);
+		factions.remove(pos);
+		colours.remove(pos);
+		if(claim instanceof TileEntityCitadel)
+			citadels.remove(claim);
+		changedChunks.add(pos);
+	}
+
+	// Returns null if there is no claim loaded in this chunk
+	public IClaim getClaim(DimChunkPos pos)
+	{
+		return claims.get(pos);
+	}
+
+	// Returns null if there is no claim loaded in this chunk
+	public UUID getFaction(DimChunkPos pos)
+	{
+		return factions.get(pos);
+	}
+
+	public boolean isClaimedBy(DimChunkPos pos, UUID factionID)
+	{
+		UUID claimedBy = factions.get(pos);
+		return claimedBy != null && claimedBy.equals(factionID);
+	}
+
+	public List<TileEntityCitadel> getCitadels()
+	{
+		return Collections.unmodifiableList(citadels);
+	}
+
+	public boolean hasChanges() { return !changedChunks.isEmpty(); }
+
+	public List<DimChunkPos> takeChangedChunks()
+	{
+		List<DimChunkPos> changed = new ArrayList<DimChunkPos>(changedChunks);
+		changedChunks.clear();
+		return changed;
+	}
+
+	public void clear()
+	{
+		claims.clear();
+		factions.clear();
+		colours.clear();
+		citadels.clear();
+		changedChunks.clear();
+	}
+}
@@ -8,6 +8,7 @@ import org.lwjgl.input.Keyboard;
 import com.flansmod.warforge.common.CommonProxy;
 import com.flansmod.warforge.common.DimBlockPos;
 import com.flansmod.warforge.common.WarForgeMod;
+import com.flansmod.warforge.common.blocks.IClaim;
 import com.flansmod.warforge.common.blocks.TileEntityBasicClaim;
 import com.flansmod.warforge.common.blocks.TileEntityCitadel;
 import com.flansmod.warforge.common.blocks.TileEntityLeaderboard;
@@ -37,6 +38,7 @@ import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 public class ClientProxy extends CommonProxy
 {
 	public static HashMap<DimBlockPos, SiegeCampProgressInfo> sSiegeInfo = new HashMap<DimBlockPos, SiegeCampProgressInfo>();
+	public static ClientClaimRegistry sClaimRegistry = new ClientClaimRegistry();
 	public static KeyBinding factionChatKey = new KeyBinding("key.factionchat.desc",
 			KeyConflictContext.IN_GAME,
 			Keyboard.KEY_Y,
@@ -142,6 +144,18 @@ public class ClientProxy extends CommonProxy
 		sSiegeInfo.put(info.attackingPos, info);
 	}
 	
+	@Override
+	public void OnClientClaimChanged(IClaim claim)
+	{
+		sClaimRegistry.onClaimUpdated(claim);
+	}
+	
+	@Override
+	public void OnClientClaimRemoved(IClaim claim)
+	{
+		sClaimRegistry.onClaimRemoved(claim);
+	}
+	
 	public static void requestFactionInfo(UUID factionID)
 	{
 		PacketRequestFactionInfo request = new PacketRequestFactionInfo();
@@ -2,7 +2,12 @@ package com.flansmod.warforge.client;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
+
+import org.lwjgl.opengl.GL11;
 
 import com.flansmod.warforge.common.DimBlockPos;
 import com.flansmod.warforge.common.DimChunkPos;
@@ -18,10 +23,16 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.entity.EntityPlayerSP;
 import net.minecraft.client.model.ModelBanner;
 import net.minecraft.client.renderer.BannerTextures;
+import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.GLAllocation;
 import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.OpenGlHelper;
 import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.WorldVertexBufferUploader;
+import net.minecraft.client.renderer.culling.Frustum;
+import net.minecraft.client.renderer.culling.ICamera;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.renderer.vertex.VertexBuffer;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.EnumDyeColor;
@@ -31,15 +42,16 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.tileentity.BannerPattern;
-import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.RayTraceResult;
 import net.minecraft.world.World;
 import net.minecraftforge.client.event.RenderGameOverlayEvent;
 import net.minecraftforge.client.event.RenderGameOverlayEvent.ElementType;
 import net.minecraftforge.client.event.RenderWorldLastEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.ClientTickEvent;
 
@@ -61,9 +73,14 @@ public class ClientTickHandler
 
 	private final HashMap<ItemStack, ResourceLocation> bannerTextures = new HashMap<ItemStack, ResourceLocation>();
 
-	public static boolean CLAIMS_DIRTY = false;
-	private HashMap<DimChunkPos, BorderRenderData> renderData = new HashMap<DimChunkPos, BorderRenderData>();
+	private final HashMap<DimChunkPos, BorderRenderData> renderData = new HashMap<DimChunkPos, BorderRenderData>();
 	private final int renderList = GLAllocation.generateDisplayLists(1);
+	private final BorderMesher mesher = new BorderMesher();
+	private final HashMap<BatchKey, BorderBatch> borderBatches = new HashMap<BatchKey, BorderBatch>();
+	// Where batches are put together before uploading, kept to save reallocating it
+	private final BufferBuilder batchBuffer = new BufferBuilder(1 << 18);
+	// Chunks whose border needs a new mesh, built nearest to the camera first
+	private final HashSet<DimChunkPos> dirtyBorders = new HashSet<DimChunkPos>();
 
 	public ClientTickHandler()
 	{
@@ -93,9 +110,6 @@ public class ClientTickHandler
 		if(newAreaToastTime > 0.0f)
 			newAreaToastTime--;
 		
-		if(Minecraft.getMinecraft().player != null && Minecraft.getMinecraft().player.ticksExisted % 200 == 0)
-			CLAIMS_DIRTY = true;
-		
 		if(WarForgeConfig.SHOW_NEW_AREA_TIMER > 0.0f)
 		{
 			EntityPlayerSP player = Minecraft.getMinecraft().player;
@@ -105,22 +119,9 @@ public class ClientTickHandler
 				
 				if(!standing.equals(playerChunkPos))
 				{
-					IClaim preClaim = null;
-					IClaim postClaim = null;
-					
-					// Try and find the claim we left and the claim we entered
-					for(TileEntity te : player.world.loadedTileEntityList)
-					{
-						if(te instanceof IClaim)
-						{
-							DimChunkPos tePos = ((IClaim) te).getClaimPos().toChunkPos();
-							if(tePos.equals(playerChunkPos))
-								preClaim = (IClaim)te;
-							
-							if(tePos.equals(standing))
-								postClaim = (IClaim)te;
-						}
-					}
+					// The claim we left and the claim we entered
+					IClaim preClaim = ClientProxy.sClaimRegistry.getClaim(playerChunkPos);
+					IClaim postClaim = ClientProxy.sClaimRegistry.getClaim(standing);
 					
 					if(preClaim == null)
 					{
@@ -363,307 +364,371 @@ public class ClientTickHandler
 	
 	private static class BorderRenderData
 	{
+		public final DimChunkPos pos;
 		public IClaim claim;
-		public int renderList = -1;
+		// Which sides and colour the last requested mesh has, sides -1 if there hasn't been one
+		public int sides = -1;
+		public int colour = 0;
+		// Bumped on every mesh request, so that meshes which finish after being superseded are thrown away
+		public long meshGeneration = 0;
+		// The latest finished mesh, kept so the batch can be put back together when any of its other members change
+		public int[] vertexData = null;
+		public BorderBatch batch = null;
+		
+		public BorderRenderData(DimChunkPos pos)
+		{
+			this.pos = pos;
+		}
 	}
-
-    private void renderZAlignedSquare(int x, int y, double z, int ori)
-    {
-		tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-		tess.getBuffer().pos(x + 0, y + 0, z).tex(((ori + 0) / 2) % 2, ((ori + 3) / 2) % 2).endVertex();
-		tess.getBuffer().pos(x + 1, y + 0, z).tex(((ori + 1) / 2) % 2, ((ori + 0) / 2) % 2).endVertex();
-		tess.getBuffer().pos(x + 1, y + 1, z).tex(((ori + 2) / 2) % 2, ((ori + 1) / 2) % 2).endVertex();
-		tess.getBuffer().pos(x + 0, y + 1, z).tex(((ori + 3) / 2) % 2, ((ori + 2) / 2) % 2).endVertex();
-		tess.draw();
-    }
-    
-    private void renderXAlignedSquare(double x, int y, int z, int ori)
-    {
-		tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-		tess.getBuffer().pos(x, y + 0, z + 0).tex(((ori + 0) / 2) % 2, ((ori + 3) / 2) % 2).endVertex();
-		tess.getBuffer().pos(x, y + 0, z + 1).tex(((ori + 1) / 2) % 2, ((ori + 0) / 2) % 2).endVertex();
-		tess.getBuffer().pos(x, y + 1, z + 1).tex(((ori + 2) / 2) % 2, ((ori + 1) / 2) % 2).endVertex();
-		tess.getBuffer().pos(x, y + 1, z + 0).tex(((ori + 3) / 2) % 2, ((ori + 2) / 2) % 2).endVertex();
-		tess.draw();
-    }
-    
-	private void updateRenderData()
+	
+	private static class BatchKey
 	{
-		World world = Minecraft.getMinecraft().world;
-		if(world == null)
-			return;
+		public final int dim, regionX, regionZ, colour;
 		
-		// Update our list from the old one		
-		HashMap<DimChunkPos, BorderRenderData> tempData = new HashMap<DimChunkPos, BorderRenderData>();
+		public BatchKey(int dim, int regionX, int regionZ, int colour)
+		{
+			this.dim = dim;
+			this.regionX = regionX;
+			this.regionZ = regionZ;
+			this.colour = colour;
+		}
+		
+		@Override
+		public boolean equals(Object other)
+		{
+			if(other == this)
+				return true;
+			if(!(other instanceof BatchKey))
+				return false;
+			BatchKey key = (BatchKey)other;
+			return key.dim == dim && key.regionX == regionX && key.regionZ == regionZ && key.colour == colour;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return ((dim * 31 + regionX) * 31 + regionZ) * 31 + colour;
+		}
+	}
+	
+	// Every border mesh of one colour in one region, joined into a single buffer so they take one draw call between them.
+	// The colour is in the vertices, and the vertices are relative to the region's corner
+	private static class BorderBatch
+	{
+		private static final WorldVertexBufferUploader uploader = new WorldVertexBufferUploader();
+		
+		public final BatchKey key;
+		public final HashSet<BorderRenderData> members = new HashSet<BorderRenderData>();
+		public boolean dirty = true;
+		// Chunk bounds of the members, for culling
+		private int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+		private VertexBuffer vertexBuffer = null;
+		private int renderList = -1;
+		
+		public BorderBatch(BatchKey key)
+		{
+			this.key = key;
+		}
 		
-		// Find all our data entries first
-		for(TileEntity te : world.loadedTileEntityList)
+		public boolean hasMesh() { return vertexBuffer != null || renderList >= 0; }
+		
+		// Replaces and frees the current buffer with all the members' meshes. Render thread only
+		public void rebuild(BufferBuilder buffer)
 		{
-			if(te instanceof IClaim)
+			delete();
+			dirty = false;
+			
+			minChunkX = minChunkZ = Integer.MAX_VALUE;
+			maxChunkX = maxChunkZ = Integer.MIN_VALUE;
+			buffer.begin(7, DefaultVertexFormats.POSITION_TEX_COLOR);
+			for(BorderRenderData member : members)
 			{
-				DimBlockPos blockPos = ((IClaim) te).getClaimPos();
-				DimChunkPos chunkPos = blockPos.toChunkPos();
+				if(member.vertexData == null || member.vertexData.length == 0)
+					continue;
+				buffer.addVertexData(member.vertexData);
+				minChunkX = Math.min(minChunkX, member.pos.x);
+				minChunkZ = Math.min(minChunkZ, member.pos.z);
+				maxChunkX = Math.max(maxChunkX, member.pos.x);
+				maxChunkZ = Math.max(maxChunkZ, member.pos.z);
+			}
+			buffer.finishDrawing();
 			
-				if(renderData.containsKey(chunkPos))
-				{
-					tempData.put(chunkPos, renderData.get(chunkPos));
-				}
-				else
-				{
-					BorderRenderData data = new BorderRenderData();
-					data.claim = (IClaim)te;
-					tempData.put(chunkPos, data);
-				}
+			if(buffer.getVertexCount() == 0)
+			{
+				buffer.reset();
+				return;
+			}
+			
+			if(OpenGlHelper.useVbo())
+			{
+				vertexBuffer = new VertexBuffer(DefaultVertexFormats.POSITION_TEX_COLOR);
+				vertexBuffer.bufferData(buffer.getByteBuffer());
+				buffer.reset();
+			}
+			else
+			{
+				renderList = GLAllocation.generateDisplayLists(1);
+				GlStateManager.glNewList(renderList, 4864);
+				uploader.draw(buffer);
+				GlStateManager.glEndList();
 			}
 		}
 		
-		renderData = tempData;
+		public boolean isVisible(ICamera frustum, double cameraX, double cameraZ)
+		{
+			double minX = minChunkX * 16;
+			double minZ = minChunkZ * 16;
+			double maxX = maxChunkX * 16 + 16;
+			double maxZ = maxChunkZ * 16 + 16;
+			// Distance to the nearest point of the bounds
+			double dx = Math.max(0d, Math.max(minX - cameraX, cameraX - maxX));
+			double dz = Math.max(0d, Math.max(minZ - cameraZ, cameraZ - maxZ));
+			double maxDistance = WarForgeConfig.BORDER_RENDER_DISTANCE;
+			if(dx * dx + dz * dz > maxDistance * maxDistance)
+				return false;
+			return frustum.isBoundingBoxInFrustum(new AxisAlignedBB(minX, 0, minZ, maxX, 256, maxZ));
+		}
 		
+		// Expects the vertex, tex coord and colour client states to be enabled
+		public void draw()
+		{
+			if(vertexBuffer != null)
+			{
+				vertexBuffer.bindBuffer();
+				GlStateManager.glVertexPointer(3, GL11.GL_FLOAT, 24, 0);
+				GlStateManager.glTexCoordPointer(2, GL11.GL_FLOAT, 24, 12);
+				GlStateManager.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, 24, 20);
+				vertexBuffer.drawArrays(GL11.GL_QUADS);
+				vertexBuffer.unbindBuffer();
+			}
+			else if(renderList >= 0)
+			{
+				GlStateManager.callList(renderList);
+			}
+		}
+		
+		public void delete()
+		{
+			if(vertexBuffer != null)
+			{
+				vertexBuffer.deleteGlBuffers();
+				vertexBuffer = null;
+			}
+			if(renderList >= 0)
+			{
+				GLAllocation.deleteDisplayLists(renderList);
+				renderList = -1;
+			}
+		}
+	}
+    
+	// Brings the border entries in line with the chunks whose claims changed, and marks the borders that need new meshes
+	private void syncRenderData()
+	{
+		ClientClaimRegistry registry = ClientProxy.sClaimRegistry;
+		if(!registry.hasChanges())
+			return;
+		
+		for(DimChunkPos pos : registry.takeChangedChunks())
+		{
+			IClaim claim = registry.getClaim(pos);
+			BorderRenderData data = renderData.get(pos);
+			if(claim == null)
+			{
+				if(data != null)
+				{
+					moveToBatch(data, null);
+					renderData.remove(pos);
+				}
+			}
+			else if(data == null)
+			{
+				data = new BorderRenderData(pos);
+				data.claim = claim;
+				renderData.put(pos, data);
+			}
+			else
+			{
+				data.claim = claim;
+				if(data.colour != claim.getColour())
+					dirtyBorders.add(pos);
+			}
+			
+			// Its neighbours may need walls put up or taken down too
+			markIfSidesChanged(pos);
+			for(EnumFacing facing : EnumFacing.HORIZONTALS)
+				markIfSidesChanged(pos.Offset(facing, 1));
+		}
 	}
 	
-	private void updateRandomMesh()
+	private void markIfSidesChanged(DimChunkPos pos)
+	{
+		BorderRenderData data = renderData.get(pos);
+		if(data != null && getBorderSides(pos) != data.sides)
+			dirtyBorders.add(pos);
+	}
+	
+	private void clearRenderData()
+	{
+		for(BorderBatch batch : borderBatches.values())
+			batch.delete();
+		borderBatches.clear();
+		renderData.clear();
+		dirtyBorders.clear();
+	}
+	
+	// Takes the border out of its current batch, if any, and puts it in this one, if not null
+	private void moveToBatch(BorderRenderData data, BorderBatch batch)
+	{
+		if(data.batch == batch)
+			return;
+		if(data.batch != null)
+		{
+			data.batch.members.remove(data);
+			data.batch.dirty = true;
+		}
+		data.batch = batch;
+		if(batch != null)
+		{
+			batch.members.add(data);
+			batch.dirty = true;
+		}
+	}
+	
+	// Marks the borders of any claimed chunks whose edge columns overlap this block range
+	public void markBordersDirty(int dim, int minX, int minZ, int maxX, int maxZ)
+	{
+		for(int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++)
+		{
+			for(int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++)
+			{
+				// Only the outermost columns of a chunk are in its border mesh
+				int localMinX = Math.max(minX - chunkX * 16, 0);
+				int localMaxX = Math.min(maxX - chunkX * 16, 15);
+				int localMinZ = Math.max(minZ - chunkZ * 16, 0);
+				int localMaxZ = Math.min(maxZ - chunkZ * 16, 15);
+				if(localMinX != 0 && localMaxX != 15 && localMinZ != 0 && localMaxZ != 15)
+					continue;
+				
+				DimChunkPos pos = new DimChunkPos(dim, chunkX, chunkZ);
+				if(renderData.containsKey(pos))
+					dirtyBorders.add(pos);
+			}
+		}
+	}
+	
+	private void rebuildDirtyMeshes(double cameraX, double cameraZ)
 	{	
 		World world = Minecraft.getMinecraft().world;
-		if(world == null || renderData.isEmpty())
+		if(world == null || dirtyBorders.isEmpty())
 			return;
-		int index = world.rand.nextInt(renderData.size());
-				
-		// Then construct the mesh for one random entry
-		for(HashMap.Entry<DimChunkPos, BorderRenderData> kvp : renderData.entrySet())
+		
+		// Pick out the nearest few, kept sorted nearest first
+		int budget = WarForgeConfig.BORDER_MESH_REBUILDS_PER_FRAME;
+		DimChunkPos[] nearest = new DimChunkPos[budget];
+		double[] nearestDistSq = new double[budget];
+		int count = 0;
+		for(Iterator<DimChunkPos> iterator = dirtyBorders.iterator(); iterator.hasNext(); )
 		{
-			if(index > 0)
+			DimChunkPos pos = iterator.next();
+			if(!renderData.containsKey(pos))
 			{
-				index--;
+				iterator.remove();
 				continue;
 			}
-
-			DimChunkPos pos = kvp.getKey();
-			BorderRenderData data = kvp.getValue();
 			
-			data.renderList = GLAllocation.generateDisplayLists(1);
-	        GlStateManager.glNewList(data.renderList, 4864);
-	        
-	        boolean renderNorth = true, renderEast = true, renderWest = true, renderSouth = true;
-	        if(renderData.containsKey(pos.North()))
-	        	renderNorth = !renderData.get(pos.North()).claim.getFaction().equals(data.claim.getFaction());
-	        if(renderData.containsKey(pos.East()))
-	        	renderEast = !renderData.get(pos.East()).claim.getFaction().equals(data.claim.getFaction());
-	        if(renderData.containsKey(pos.South()))
-	        	renderSouth = !renderData.get(pos.South()).claim.getFaction().equals(data.claim.getFaction());
-	        if(renderData.containsKey(pos.West()))
-	        	renderWest = !renderData.get(pos.West()).claim.getFaction().equals(data.claim.getFaction());
-
-	        // North edge, [0,0] -> [16,0] wall
-    		if(renderNorth)
-    		{
-    			// A smidge of semi-translucent wall from [0,0,0] to [2,256,0] offset by 0.25
-    			if(renderWest)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(0, 0, 0.25d).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(2, 0, 0.25d).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(2, 128, 0.25d).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(0, 128, 0.25d).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-				
-				// A smidge of semi-translucent wall from [14,0,0] to [16,256,0] offset by 0.25
-    			if(renderEast)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(16, 0, 0.25d).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(14, 0, 0.25d).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(14, 128, 0.25d).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(16, 128, 0.25d).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-    		}
-    		
-    		// South edge
-    		if(renderSouth)
-    		{
-    			if(renderWest)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(0, 0, 16d - 0.25d).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(2, 0, 16d - 0.25d).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(2, 128, 16d - 0.25d).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(0, 128, 16d - 0.25d).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-				
-    			if(renderEast)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(16, 0, 16d - 0.25d).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(14, 0, 16d - 0.25d).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(14, 128, 16d - 0.25d).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(16, 128, 16d - 0.25d).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-    		}
-    		
-    		// East edge, [0,0] -> [0,16] wall
-    		if(renderWest)
-    		{
-    			if(renderNorth)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(0.25d, 0, 0).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(0.25d, 0, 2).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(0.25d, 128, 2).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(0.25d, 128, 0).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-				
-    			if(renderSouth)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(0.25d, 0, 16).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(0.25d, 0, 14).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(0.25d, 128, 14).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(0.25d, 128, 16).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-    		}
-    		
-    		// West edge
-    		if(renderEast)
-    		{
-    			if(renderNorth)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(16d - 0.25d, 0, 0).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(16d - 0.25d, 0, 2).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(16d - 0.25d, 128, 2).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(16d - 0.25d, 128, 0).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-				
-    			if(renderSouth)
-    			{
-	    			tess.getBuffer().begin(7, DefaultVertexFormats.POSITION_TEX);
-					tess.getBuffer().pos(16d - 0.25d, 0, 16).tex(64f, 0.5f).endVertex();
-					tess.getBuffer().pos(16d - 0.25d, 0, 14).tex(64f, 0f).endVertex();
-					tess.getBuffer().pos(16d - 0.25d, 128, 14).tex(0f, 0f).endVertex();
-					tess.getBuffer().pos(16d - 0.25d, 128, 16).tex(0f, 0.5f).endVertex();
-					tess.draw();
-    			}
-    		}
-    		
-    			
-    		if(renderNorth || renderSouth)
-    		{
-	    		boolean airX0, airX1, airY0, airY1;
-	    		
-				// Then render all the block outlines wherever we go in / out of solid blocks
-    			for(int x = 0; x < 16; x++)
-    			{
-    				for(int y = 0; y < 256; y++)
-    				{
-    					// Render x + 1 edge on north side
-       		    		if(x < 15 && renderNorth)
-       		    		{
-	       					airX0 = world.isAirBlock(new BlockPos(pos.getXStart() + x, y, pos.getZStart()));
-	       					airX1 = world.isAirBlock(new BlockPos(pos.getXStart() + x + 1, y, pos.getZStart()));
-    			
-	       					if(!airX0 && airX1)
-	       						renderZAlignedSquare(x + 1, y + 0, 0.125d, 0);
-	       					if(airX0 && !airX1)
-	       						renderZAlignedSquare(x + 0, y + 0, 0.125d, 2);
-       		    		}
-       					// Render x + 1 edge on south side
-       		    		if(x < 15 && renderSouth)
-       		    		{
-	       					airX0 = world.isAirBlock(new BlockPos(pos.getXStart() + x, y, pos.getZEnd()));
-	       					airX1 = world.isAirBlock(new BlockPos(pos.getXStart() + x + 1, y, pos.getZEnd()));
-	       					
-	       					if(!airX0 && airX1)
-	       						renderZAlignedSquare(x + 1, y + 0, 16d - 0.125d, 0);
-	       					if(airX0 && !airX1)
-	       						renderZAlignedSquare(x + 0, y + 0, 16d - 0.125d, 2);
-       		    		}
-       		    		// Render y + 1 edge on north side
-       		    		if(y < 255 && renderNorth)
-       		    		{
-       		    			airY0 = world.isAirBlock(new BlockPos(pos.getXStart() + x, y, pos.getZStart()));
-           					airY1 = world.isAirBlock(new BlockPos(pos.getXStart() + x, y + 1, pos.getZStart()));
-	       					if(!airY0 && airY1)
-	       						renderZAlignedSquare(x + 0, y + 1, 0.125d, 3);
-	       					if(airY0 && !airY1)
-	       						renderZAlignedSquare(x + 0, y + 0, 0.125d, 1);
-       		    		}
-       		    		// Render y + 1 edge on south side
-       					if(y < 255 && renderSouth)
-       					{
-       						airY0 = world.isAirBlock(new BlockPos(pos.getXStart() + x, y, pos.getZEnd()));
-       						airY1 = world.isAirBlock(new BlockPos(pos.getXStart() + x, y + 1, pos.getZEnd()));
-	       					if(!airY0 && airY1)
-	       						renderZAlignedSquare(x + 0, y + 1, 16d - 0.125d, 3);
-	       					if(airY0 && !airY1)
-	       						renderZAlignedSquare(x + 0, y + 0, 16d - 0.125d, 1);
-       					}
-    				}
-    			}
-	        }
-    		
-    		if(renderEast || renderWest)
-    		{
-	    		boolean airZ0, airZ1, airY0, airY1;
-	    		
-				// Then render all the block outlines wherever we go in / out of solid blocks
-    			for(int z = 0; z < 16; z++)
-    			{
-    				for(int y = 0; y < 256; y++)
-    				{
-    					// Render z + 1 edge on east side
-       		    		if(z < 15 && renderWest)
-       		    		{
-	       					airZ0 = world.isAirBlock(new BlockPos(pos.getXStart(), y, pos.getZStart() + z));
-	       					airZ1 = world.isAirBlock(new BlockPos(pos.getXStart(), y, pos.getZStart() + z + 1));
-    			
-	       					if(!airZ0 && airZ1)
-	       						renderXAlignedSquare(0.125d, y + 0, z + 1, 0);
-	       					if(airZ0 && !airZ1)
-	       						renderXAlignedSquare(0.125d, y + 0, z + 0, 2);
-       		    		}
-       					// Render z + 1 edge on west side
-       		    		if(z < 15 && renderEast)
-       		    		{
-       		    			airZ0 = world.isAirBlock(new BlockPos(pos.getXEnd(), y, pos.getZStart() + z));
-	       					airZ1 = world.isAirBlock(new BlockPos(pos.getXEnd(), y, pos.getZStart() + z + 1));
-	       					
-	       					if(!airZ0 && airZ1)
-	       						renderXAlignedSquare(16d - 0.125d, y + 0, z + 1, 0);
-	       					if(airZ0 && !airZ1)
-	       						renderXAlignedSquare(16d - 0.125d, y + 0, z + 0, 2);
-       		    		}
-       		    		// Render y + 1 edge on east side
-       		    		if(y < 255 && renderWest)
-       		    		{
-       		    			airY0 = world.isAirBlock(new BlockPos(pos.getXStart(), y, pos.getZStart() + z));
-           					airY1 = world.isAirBlock(new BlockPos(pos.getXStart(), y + 1, pos.getZStart() + z));
-	       					if(!airY0 && airY1)
-	       						renderXAlignedSquare(0.125d, y + 1, z, 3);
-	       					if(airY0 && !airY1)
-	       						renderXAlignedSquare(0.125d, y + 0, z, 1);
-       		    		}
-       		    		// Render y + 1 edge on west side
-       					if(y < 255 && renderEast)
-       					{
-       		    			airY0 = world.isAirBlock(new BlockPos(pos.getXEnd(), y, pos.getZStart() + z));
-           					airY1 = world.isAirBlock(new BlockPos(pos.getXEnd(), y + 1, pos.getZStart() + z));	       					
-           					if(!airY0 && airY1)
-	       						renderXAlignedSquare(16d - 0.125d, y + 1, z, 3);
-	       					if(airY0 && !airY1)
-	       						renderXAlignedSquare(16d - 0.125d, y + 0, z, 1);
-       					}
-    				}
-    			}
-    		}
-    		GlStateManager.glEndList();
-    		break;
-		}	
+			double dx = pos.x * 16 + 8 - cameraX;
+			double dz = pos.z * 16 + 8 - cameraZ;
+			double distSq = dx * dx + dz * dz;
+			if(count == budget && distSq >= nearestDistSq[count - 1])
+				continue;
+			
+			int i = count < budget ? count++ : count - 1;
+			for(; i > 0 && nearestDistSq[i - 1] > distSq; i--)
+			{
+				nearest[i] = nearest[i - 1];
+				nearestDistSq[i] = nearestDistSq[i - 1];
+			}
+			nearest[i] = pos;
+			nearestDistSq[i] = distSq;
+		}
+		
+		for(int i = 0; i < count; i++)
+		{
+			dirtyBorders.remove(nearest[i]);
+			BorderRenderData data = renderData.get(nearest[i]);
+			data.sides = getBorderSides(nearest[i]);
+			data.colour = data.claim.getColour();
+			mesher.submit(BorderMesher.takeSnapshot(world, nearest[i], data.sides, data.colour), ++data.meshGeneration);
+		}
+	}
+	
+	// Walls go on every side that doesn't border the same faction
+	private int getBorderSides(DimChunkPos pos)
+	{
+		ClientClaimRegistry registry = ClientProxy.sClaimRegistry;
+		UUID factionID = registry.getFaction(pos);
+		int sides = 0;
+		if(!registry.isClaimedBy(pos.North(), factionID))
+			sides |= BorderMesher.SIDE_NORTH;
+		if(!registry.isClaimedBy(pos.East(), factionID))
+			sides |= BorderMesher.SIDE_EAST;
+		if(!registry.isClaimedBy(pos.South(), factionID))
+			sides |= BorderMesher.SIDE_SOUTH;
+		if(!registry.isClaimedBy(pos.West(), factionID))
+			sides |= BorderMesher.SIDE_WEST;
+		return sides;
+	}
+	
+	private void uploadFinishedMeshes()
+	{
+		for(BorderMesher.Mesh mesh = mesher.pollFinished(); mesh != null; mesh = mesher.pollFinished())
+		{
+			BorderRenderData data = renderData.get(mesh.pos);
+			if(data != null && data.meshGeneration == mesh.generation)
+			{
+				data.vertexData = mesh.vertexData;
+				BatchKey key = new BatchKey(mesh.pos.mDim, BorderMesher.getRegion(mesh.pos.x), BorderMesher.getRegion(mesh.pos.z), mesh.colour);
+				moveToBatch(data, borderBatches.computeIfAbsent(key, BorderBatch::new));
+				data.batch.dirty = true;
+			}
+		}
+	}
+	
+	// Puts back together any batches whose members changed, and drops empty ones
+	private void rebuildDirtyBatches()
+	{
+		for(Iterator<BorderBatch> iterator = borderBatches.values().iterator(); iterator.hasNext(); )
+		{
+			BorderBatch batch = iterator.next();
+			if(batch.members.isEmpty())
+			{
+				batch.delete();
+				iterator.remove();
+			}
+			else if(batch.dirty)
+			{
+				batch.rebuild(batchBuffer);
+			}
+		}
+	}
+	
+	@SubscribeEvent
+	public void onWorldLoad(WorldEvent.Load event)
+	{
+		if(event.getWorld().isRemote)
+			event.getWorld().addEventListener(new BorderWorldListener(this, event.getWorld()));
+	}
+	
+	// Claims don't reliably unload with the client world, so drop everything from it
+	@SubscribeEvent
+	public void onWorldUnload(WorldEvent.Unload event)
+	{
+		if(event.getWorld().isRemote)
+		{
+			ClientProxy.sClaimRegistry.clear();
+			clearRenderData();
+		}
 	}
 	
 	@SubscribeEvent
@@ -679,6 +744,8 @@ public class ClientTickHandler
 		double x = camera.lastTickPosX + (camera.posX - camera.lastTickPosX) * event.getPartialTicks();
 		double y = camera.lastTickPosY + (camera.posY - camera.lastTickPosY) * event.getPartialTicks();
 		double z = camera.lastTickPosZ + (camera.posZ - camera.lastTickPosZ) * event.getPartialTicks();
+		ICamera frustum = new Frustum();
+		frustum.setPosition(x, y, z);
 		
 		//Push
 		GlStateManager.pushMatrix();
@@ -709,36 +776,33 @@ public class ClientTickHandler
 			double groundRenderDistance = 64d;
 			int resolution = 1;
 	
-			if(CLAIMS_DIRTY)
-			{
-				updateRenderData();
-				CLAIMS_DIRTY = false;
-			}
+			syncRenderData();
 			
-			// Slower update speed on fast graphics
-			if(player.world.rand.nextInt(WarForgeConfig.RANDOM_BORDER_REDRAW_DENOMINATOR) == 0)
-				updateRandomMesh();
+			rebuildDirtyMeshes(x, z);
+			uploadFinishedMeshes();
+			rebuildDirtyBatches();
 			
-			// Render each chunk we have border data for
-			for(HashMap.Entry<DimChunkPos, BorderRenderData> kvp : renderData.entrySet())
+			// Render each batch of borders, one call per colour per region
+			GlStateManager.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+			OpenGlHelper.setClientActiveTexture(OpenGlHelper.defaultTexUnit);
+			GlStateManager.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+			GlStateManager.glEnableClientState(GL11.GL_COLOR_ARRAY);
+			for(BorderBatch batch : borderBatches.values())
 			{
-				DimChunkPos pos = kvp.getKey();
-				BorderRenderData data = kvp.getValue();
-	
-				if(data.renderList >= 0)
+				if(batch.key.dim == player.dimension && batch.hasMesh() && batch.isVisible(frustum, x, z))
 				{
 					GlStateManager.pushMatrix();
-					
-					int colour = data.claim.getColour();
-		            float f = (float)(colour >> 16 & 255) / 255.0F;
-		            float f1 = (float)(colour >> 8 & 255) / 255.0F;
-		            float f2 = (float)(colour & 255) / 255.0F;
-					GlStateManager.color(f, f1, f2, 1.0F);
-					GlStateManager.translate(pos.x * 16 - x, 0 - y, pos.z * 16 - z);
-		            GlStateManager.callList(data.renderList);
-		            GlStateManager.popMatrix();
+					GlStateManager.translate(batch.key.regionX * BorderMesher.REGION_CHUNKS * 16 - x, 0 - y, batch.key.regionZ * BorderMesher.REGION_CHUNKS * 16 - z);
+					batch.draw();
+					GlStateManager.popMatrix();
 				}
 			}
+			GlStateManager.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+			GlStateManager.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+			GlStateManager.glDisableClientState(GL11.GL_COLOR_ARRAY);
+			// The colour array leaves the current colour undefined
+			GlStateManager.resetColor();
+			GlStateManager.color(1.0F, 1.0F, 1.0F, 1.0F);
 	
 			// Player CanPlace? Overlay
 			if(player.getHeldItemMainhand().getItem() instanceof ItemBlock)
@@ -760,23 +824,7 @@ public class ClientTickHandler
 					playerPos = new DimChunkPos(player.dimension, result.getBlockPos());
 				}
 				
-				boolean canPlace = true;
-				List<DimChunkPos> siegeablePositions = new ArrayList<DimChunkPos>();
-				for(TileEntity te : Minecraft.getMinecraft().world.loadedTileEntityList)
-				{
-					if(te instanceof IClaim)
-					{
-						DimBlockPos blockPos = ((IClaim) te).getClaimPos();
-						DimChunkPos chunkPos = blockPos.toChunkPos();
-						
-						if(playerPos.x == chunkPos.x && playerPos.z == chunkPos.z)
-						{
-							canPlace = false;
-						}
-						if(((IClaim)te).canBeSieged())
-							siegeablePositions.add(chunkPos);
-					}
-				}
+				boolean canPlace = ClientProxy.sClaimRegistry.getClaim(playerPos) == null;
 				if(holding == WarForgeMod.CONTENT.siegeCampBlock)
 				{
 					shouldRender = true;
@@ -785,7 +833,8 @@ public class ClientTickHandler
 						canPlace = false;
 						for(EnumFacing facing : EnumFacing.HORIZONTALS)
 						{
-							if(siegeablePositions.contains(playerPos.Offset(facing, 1)))
+							IClaim neighbour = ClientProxy.sClaimRegistry.getClaim(playerPos.Offset(facing, 1));
+							if(neighbour != null && neighbour.canBeSieged())
 							{
 								canPlace = true;
 							}
@@ -837,11 +886,11 @@ public class ClientTickHandler
 			GlStateManager.enableCull();
 			GlStateManager.color(1f, 1f, 1f);
 			
-			for(TileEntity te : Minecraft.getMinecraft().world.loadedTileEntityList)
+			for(TileEntityCitadel citadel : ClientProxy.sClaimRegistry.getCitadels())
 			{
-				if(te instanceof TileEntityCitadel citadel)
+				if(!citadel.isInvalid() && isFlagVisible(citadel.getPos(), frustum, x, y, z))
 				{
-                    DimBlockPos blockPos = ((IClaim) te).getClaimPos();
+                    DimBlockPos blockPos = citadel.getClaimPos();
 					
 					double distance = Math.sqrt((blockPos.getX() - x)*(blockPos.getX() - x)+(blockPos.getY() - y)*(blockPos.getY() - y)+(blockPos.getZ() - z)*(blockPos.getZ() - z));					
 					double groundLevelBlend = (skyRenderDistance - distance) / (skyRenderDistance - groundRenderDistance);
@@ -897,16 +946,16 @@ public class ClientTickHandler
 						
 						 GlStateManager.pushMatrix();
 				            
-			            double deltaX = te.getPos().getX() - x;
-			            double deltaZ = te.getPos().getZ() - z;
+			            double deltaX = citadel.getPos().getX() - x;
+			            double deltaZ = citadel.getPos().getZ() - z;
 			            
 			            float angle = (float)Math.atan2(deltaZ, deltaX) * 180f / (float)Math.PI + 90f;
 			            
-			            double yPos = te.getPos().getY() + 2d;
+			            double yPos = citadel.getPos().getY() + 2d;
 			            yPos = 256 + (yPos - 256) * groundLevelBlend;
 			            float scale = (float)(1d * groundLevelBlend + 10d * (1d - groundLevelBlend));
 			            
-			            GlStateManager.translate(0.5d + te.getPos().getX() - x, yPos - y, 0.5d + te.getPos().getZ() - z);
+			            GlStateManager.translate(0.5d + citadel.getPos().getX() - x, yPos - y, 0.5d + citadel.getPos().getZ() - z);
 			            GlStateManager.scale(scale, -scale, -scale);
 			            GlStateManager.rotate(angle, 0f, 1f, 0f);
 			            this.bannerModel.renderBanner();
@@ -925,6 +974,14 @@ public class ClientTickHandler
 	
 
 	
+	// Far away flags are drawn up in the sky at up to 10x scale, so allow for that in the bounds
+	private static boolean isFlagVisible(BlockPos pos, ICamera frustum, double cameraX, double cameraY, double cameraZ)
+	{
+		if(pos.distanceSq(cameraX, cameraY, cameraZ) > (double)WarForgeConfig.FLAG_RENDER_DISTANCE * WarForgeConfig.FLAG_RENDER_DISTANCE)
+			return false;
+		return frustum.isBoundingBoxInFrustum(new AxisAlignedBB(pos.getX() - 10, pos.getY(), pos.getZ() - 10, pos.getX() + 11, 270, pos.getZ() + 11));
+	}
+	
 	private void vertexAt(DimChunkPos chunkPos, World world, int x, int z, double groundLevelBlend, double playerHeight)
 	{
 		double topHeight = playerHeight + 128;
@@ -1,5 +1,6 @@
 package com.flansmod.warforge.common;
 
+import com.flansmod.warforge.common.blocks.IClaim;
 import com.flansmod.warforge.common.blocks.TileEntityBasicClaim;
 import com.flansmod.warforge.common.blocks.TileEntityCitadel;
 import com.flansmod.warforge.common.network.SiegeCampProgressInfo;
@@ -90,4 +91,16 @@ public class CommonProxy implements IGuiHandler
 	{
 		// Do nothing, update on client
 	}
+	
+	// Claim tile entities on the client call this when they load or get new data from the server
+	public void OnClientClaimChanged(IClaim claim)
+	{
+		
+	}
+	
+	// And this when they are unloaded or broken
+	public void OnClientClaimRemoved(IClaim claim)
+	{
+		
+	}
 }
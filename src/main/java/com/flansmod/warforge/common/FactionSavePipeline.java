@@ -0,0 +1,100 @@
+package com.flansmod.warforge.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+
+// Writes warforgefactions.dat off the server thread.
+// The caller snapshots the faction data into a fresh NBTTagCompound on the server thread, which is then compressed
+// and written to a temp file on a single background thread, before being moved over the real file.
+// Saves are written in the order they were submitted, and the previous file is kept as the backup
+public class FactionSavePipeline
+{
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30L;
+
+	private ExecutorService executor = null;
+
+	// onWritten runs on the save thread, only if the snapshot made it to disk
+	public void submit(final NBTTagCompound snapshot, final File target, final File backup, final String event, final long snapshotNanos, final Runnable onWritten)
+	{
+		if(executor == null)
+		{
+			executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "WarForge Save Thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		executor.execute(() -> {
+			if(write(snapshot, target, backup, event, snapshotNanos) && onWritten != null)
+				onWritten.run();
+		});
+	}
+
+	// Blocks until every submitted save has hit the disk. Used when the server stops
+	public void flush()
+	{
+		if(executor == null)
+			return;
+
+		executor.shutdown();
+		try
+		{
+			if(!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+				WarForgeMod.LOGGER.error("Timed out waiting for warforgefactions.dat to finish saving");
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		executor = null;
+	}
+
+	private static boolean write(NBTTagCompound snapshot, File target, File backup, String event, long snapshotNanos)
+	{
+		long writeStart = System.nanoTime();
+		File temp = new File(target.getPath() + ".tmp");
+		try
+		{
+			try(FileOutputStream stream = new FileOutputStream(temp))
+			{
+				CompressedStreamTools.writeCompressed(snapshot, stream);
+				stream.getFD().sync();
+			}
+
+			if(target.exists())
+				Files.copy(target.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			try
+			{
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			long writeNanos = System.nanoTime() - writeStart;
+			WarForgeMod.LOGGER.info("Successfully saved warforgefactions.dat on event - " + event
+				+ " (snapshot " + TimeUnit.NANOSECONDS.toMillis(snapshotNanos) + "ms on server thread, write "
+				+ TimeUnit.NANOSECONDS.toMillis(writeNanos) + "ms in background)");
+			return true;
+		}
+		catch(IOException e)
+		{
+			WarForgeMod.LOGGER.error("Failed to save warforgefactions.dat");
+			e.printStackTrace();
+			return false;
+		}
+	}
+}
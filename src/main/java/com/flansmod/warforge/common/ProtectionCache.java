@@ -0,0 +1,75 @@
+package com.flansmod.warforge.common;
+
+import java.util.Arrays;
+
+import com.flansmod.warforge.common.WarForgeConfig.ProtectionConfig;
+import com.flansmod.warforge.server.ClaimIndex;
+import com.flansmod.warforge.server.Faction;
+
+// Remembers the ProtectionConfig resolved for a (chunk, player faction) pair.
+// Direct mapped, so a collision just evicts the older entry. The whole cache is dropped whenever the
+// FactionStorage protection version moves, which covers claims placed or lost, citadel moves and membership changes
+public class ProtectionCache
+{
+	private static final int CAPACITY = 4096; // Must be a power of two
+
+	private final long[] chunkKeys = new long[CAPACITY];
+	private final Faction[] playerFactions = new Faction[CAPACITY];
+	private final ProtectionConfig[] configs = new ProtectionConfig[CAPACITY];
+
+	private long builtForVersion = -1L;
+	private long hits = 0L;
+	private long misses = 0L;
+
+	public long getHits() { return hits; }
+	public long getMisses() { return misses; }
+
+	public void resetCounters()
+	{
+		hits = 0L;
+		misses = 0L;
+	}
+
+	// Returns null on a miss
+	public ProtectionConfig get(long version, int dim, int chunkX, int chunkZ, Faction playerFaction)
+	{
+		if(version != builtForVersion)
+		{
+			invalidate();
+			builtForVersion = version;
+		}
+
+		long key = ClaimIndex.pack(dim, chunkX, chunkZ);
+		int slot = slot(key, playerFaction);
+		ProtectionConfig config = configs[slot];
+		if(config != null && chunkKeys[slot] == key && playerFactions[slot] == playerFaction)
+		{
+			hits++;
+			return config;
+		}
+
+		misses++;
+		return null;
+	}
+
+	public void put(int dim, int chunkX, int chunkZ, Faction playerFaction, ProtectionConfig config)
+	{
+		long key = ClaimIndex.pack(dim, chunkX, chunkZ);
+		int slot = slot(key, playerFaction);
+		chunkKeys[slot] = key;
+		playerFactions[slot] = playerFaction;
+		configs[slot] = config;
+	}
+
+	public void invalidate()
+	{
+		Arrays.fill(configs, null);
+		Arrays.fill(playerFactions, null);
+	}
+
+	private static int slot(long key, Faction playerFaction)
+	{
+		long h = (key ^ (playerFaction == null ? 0 : System.identityHashCode(playerFaction))) * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & (CAPACITY - 1);
+	}
+}
@@ -1,11 +1,13 @@
 package com.flansmod.warforge.common;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.Nonnull;
 
 import com.flansmod.warforge.common.WarForgeConfig.ProtectionConfig;
+import com.flansmod.warforge.server.ClaimIndex;
 import com.flansmod.warforge.server.Faction;
 import com.flansmod.warforge.server.FactionStorage;
 
@@ -16,6 +18,8 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.ItemFood;
 import net.minecraft.util.DamageSource;
 import net.minecraft.util.EntityDamageSource;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.entity.EntityEvent.EnteringChunk;
 import net.minecraftforge.event.entity.EntityMountEvent;
@@ -29,6 +33,7 @@ import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 public class ProtectionsModule 
 {
 	public static boolean OP_OVERRIDE = false;
+	public static final ProtectionCache CACHE = new ProtectionCache();
 	
 	public ProtectionsModule()
 	{
@@ -68,14 +73,46 @@ public class ProtectionsModule
 	@Nonnull
 	public static ProtectionConfig GetProtections(UUID playerID, DimBlockPos pos)
 	{
-		return GetProtections(playerID, pos.toChunkPos());
+		return GetProtections(playerID, pos.dim, pos.getX() >> 4, pos.getZ() >> 4);
+	}
+	
+	@Nonnull
+	public static ProtectionConfig GetProtections(UUID playerID, int dim, BlockPos pos)
+	{
+		return GetProtections(playerID, dim, pos.getX() >> 4, pos.getZ() >> 4);
+	}
+	
+	@Nonnull
+	public static ProtectionConfig GetProtections(UUID playerID, Entity entity)
+	{
+		return GetProtections(playerID, entity.dimension, MathHelper.floor(entity.posX) >> 4, MathHelper.floor(entity.posZ) >> 4);
 	}
 	
-	// It is generally expected that you are asking about a loaded chunk, not that that should matter
 	@Nonnull
 	public static ProtectionConfig GetProtections(UUID playerID, DimChunkPos pos)
 	{
-		UUID factionID = WarForgeMod.FACTIONS.getClaim(pos);
+		return GetProtections(playerID, pos.mDim, pos.x, pos.z);
+	}
+	
+	// It is generally expected that you are asking about a loaded chunk, not that that should matter
+	// This is hit by most world events, so avoid allocating anything in here
+	@Nonnull
+	public static ProtectionConfig GetProtections(UUID playerID, int dim, int chunkX, int chunkZ)
+	{
+		Faction playerFaction = playerID == null || playerID.equals(Faction.nullUuid) ? null : WarForgeMod.FACTIONS.getFactionOfPlayer(playerID);
+		ProtectionConfig config = CACHE.get(WarForgeMod.FACTIONS.getProtectionVersion(), dim, chunkX, chunkZ, playerFaction);
+		if(config == null)
+		{
+			config = ResolveProtections(playerFaction, dim, chunkX, chunkZ);
+			CACHE.put(dim, chunkX, chunkZ, playerFaction, config);
+		}
+		return config;
+	}
+	
+	@Nonnull
+	private static ProtectionConfig ResolveProtections(Faction playerFaction, int dim, int chunkX, int chunkZ)
+	{
+		UUID factionID = WarForgeMod.FACTIONS.getClaim(dim, chunkX, chunkZ);
 		if(factionID.equals(FactionStorage.SAFE_ZONE_ID))
 			return WarForgeConfig.SAFE_ZONE;
 		if(factionID.equals(FactionStorage.WAR_ZONE_ID))
@@ -84,9 +121,10 @@ public class ProtectionsModule
 		Faction faction = WarForgeMod.FACTIONS.getFaction(factionID);
 		if(faction != null)
 		{
-			boolean playerIsInFaction = playerID != null && !playerID.equals(Faction.nullUuid) && faction.isPlayerInFaction(playerID);
+			boolean playerIsInFaction = playerFaction == faction;
 			
-			if(faction.citadelPos.toChunkPos().equals(pos))
+			DimBlockPos citadelPos = faction.citadelPos;
+			if(citadelPos.dim == dim && citadelPos.getX() >> 4 == chunkX && citadelPos.getZ() >> 4 == chunkZ)
 				return playerIsInFaction ? WarForgeConfig.CITADEL_FRIEND : WarForgeConfig.CITADEL_FOE;
 
 			return playerIsInFaction ? WarForgeConfig.CLAIM_FRIEND : WarForgeConfig.CLAIM_FOE;
@@ -103,8 +141,7 @@ public class ProtectionsModule
 		
 		if(event.getEntityMounting() instanceof EntityPlayer)
 		{
-			DimBlockPos vehiclePos = new DimBlockPos(event.getEntityBeingMounted().dimension, event.getEntityBeingMounted().getPosition());
-	    	ProtectionConfig mountConfig = GetProtections(event.getEntityMounting().getUniqueID(), vehiclePos);
+	    	ProtectionConfig mountConfig = GetProtections(event.getEntityMounting().getUniqueID(), event.getEntityBeingMounted());
 	    	
 	    	if(event.isMounting() && !mountConfig.ALLOW_MOUNT_ENTITY)
 	    		event.setCanceled(true);
@@ -120,24 +157,70 @@ public class ProtectionsModule
 		if(event.getWorld().isRemote)
     		return;
 		
-		// Check each pos, but keep a cache of configs so we don't do like 300 lookups
-		int dim = event.getWorld().provider.getDimension();
-    	HashMap<DimChunkPos, ProtectionConfig> checkedPositions = new HashMap<DimChunkPos, ProtectionConfig>(); 
-   
-    	for(int i = event.getAffectedBlocks().size() - 1; i >= 0; i--)
-    	{
-    		DimChunkPos cPos = new DimChunkPos(dim, event.getAffectedBlocks().get(i));
-    		if(!checkedPositions.containsKey(cPos))
-    		{
-    			ProtectionConfig config = GetProtections(Faction.nullUuid, cPos);
-    			checkedPositions.put(cPos, config);
-    		}
-    		if(!checkedPositions.get(cPos).EXPLOSION_DAMAGE || !checkedPositions.get(cPos).BLOCK_REMOVAL)
-    		{
-    			//WarForgeMod.LOGGER.info("Protected block position from explosion");
-        		event.getAffectedBlocks().remove(i);
-    		}
-    	}
+		FilterExplosion(event.getWorld().provider.getDimension(), event.getAffectedBlocks());
+	}
+	
+	// Removes every protected position from the list in a single pass.
+	// An explosion only touches a handful of chunks, so the decision for each chunk is worked out once and kept in a
+	// small table, rather than allocating a chunk pos per affected block
+	public static void FilterExplosion(int dim, List<BlockPos> affectedBlocks)
+	{
+		int numChunks = 0;
+		long[] chunkKeys = new long[8];
+		boolean[] chunkAllowed = new boolean[8];
+		
+		long lastKey = 0L;
+		boolean lastAllowed = true;
+		boolean hasLast = false;
+		
+		int numKept = 0;
+		for(int i = 0; i < affectedBlocks.size(); i++)
+		{
+			BlockPos pos = affectedBlocks.get(i);
+			int chunkX = pos.getX() >> 4;
+			int chunkZ = pos.getZ() >> 4;
+			long key = ClaimIndex.pack(dim, chunkX, chunkZ);
+			
+			if(!hasLast || key != lastKey)
+			{
+				int found = -1;
+				for(int j = 0; j < numChunks; j++)
+				{
+					if(chunkKeys[j] == key)
+					{
+						found = j;
+						break;
+					}
+				}
+				
+				if(found == -1)
+				{
+					if(numChunks == chunkKeys.length)
+					{
+						chunkKeys = Arrays.copyOf(chunkKeys, numChunks * 2);
+						chunkAllowed = Arrays.copyOf(chunkAllowed, numChunks * 2);
+					}
+					ProtectionConfig config = GetProtections(Faction.nullUuid, dim, chunkX, chunkZ);
+					chunkKeys[numChunks] = key;
+					chunkAllowed[numChunks] = config.EXPLOSION_DAMAGE && config.BLOCK_REMOVAL;
+					found = numChunks++;
+				}
+				
+				lastKey = key;
+				lastAllowed = chunkAllowed[found];
+				hasLast = true;
+			}
+			
+			if(lastAllowed)
+			{
+				if(numKept != i)
+					affectedBlocks.set(numKept, pos);
+				numKept++;
+			}
+		}
+		
+		if(numKept < affectedBlocks.size())
+			affectedBlocks.subList(numKept, affectedBlocks.size()).clear();
 	}
 	
 	@SubscribeEvent
@@ -146,8 +229,7 @@ public class ProtectionsModule
 		if(event.getEntity().world.isRemote)
     		return;
 		
-		DimBlockPos damagedPos = new DimBlockPos(event.getEntity().dimension, event.getEntity().getPosition());
-    	ProtectionConfig damagedConfig = GetProtections(event.getEntity().getUniqueID(), damagedPos);
+    	ProtectionConfig damagedConfig = GetProtections(event.getEntity().getUniqueID(), event.getEntity());
     	
     	DamageSource source = event.getSource();
     	if(source instanceof EntityDamageSource)
@@ -162,8 +244,7 @@ public class ProtectionsModule
         			return;
         		}
     			
-        		DimBlockPos attackerPos = new DimBlockPos(attacker.dimension, attacker.getPosition()); 
-        		ProtectionConfig attackerConfig = GetProtections(attacker.getUniqueID(), attackerPos);
+        		ProtectionConfig attackerConfig = GetProtections(attacker.getUniqueID(), attacker);
         		
         		if(!attackerConfig.PLAYER_DEAL_DAMAGE)
         		{
@@ -206,8 +287,7 @@ public class ProtectionsModule
 			return;
 		}
 
-    	DimBlockPos pos = new DimBlockPos(eventEntity.dimension, event.getPos());
-    	ProtectionConfig config = GetProtections(eventEntity.getUniqueID(), pos);
+    	ProtectionConfig config = GetProtections(eventEntity.getUniqueID(), eventEntity.dimension, event.getPos());
 		
     	if(!config.PLACE_BLOCKS)
     	{
@@ -228,8 +308,7 @@ public class ProtectionsModule
     	if(OP_OVERRIDE && WarForgeMod.isOp(event.getPlayer()))
     		return;
     	
-    	DimBlockPos pos = new DimBlockPos(event.getPlayer().dimension, event.getPos());
-    	ProtectionConfig config = GetProtections(event.getPlayer().getUniqueID(), pos);
+    	ProtectionConfig config = GetProtections(event.getPlayer().getUniqueID(), event.getPlayer().dimension, event.getPos());
 		
     	if(!config.BREAK_BLOCKS || !config.BLOCK_REMOVAL)
     	{
@@ -249,8 +328,7 @@ public class ProtectionsModule
     	if(OP_OVERRIDE && WarForgeMod.isOp(event.getEntityPlayer()))
     		return;
     	
-    	DimBlockPos pos = new DimBlockPos(event.getTarget().dimension, event.getTarget().getPosition());
-    	ProtectionConfig config = GetProtections(event.getEntityPlayer().getUniqueID(), pos);
+    	ProtectionConfig config = GetProtections(event.getEntityPlayer().getUniqueID(), event.getTarget());
     	
     	if(!config.INTERACT)
     	{
@@ -268,8 +346,7 @@ public class ProtectionsModule
     	if(OP_OVERRIDE && WarForgeMod.isOp(event.getEntityPlayer()))
     		return;
     	
-    	DimBlockPos pos = new DimBlockPos(event.getEntity().dimension, event.getPos());
-    	ProtectionConfig config = GetProtections(event.getEntityPlayer().getUniqueID(), pos);
+    	ProtectionConfig config = GetProtections(event.getEntityPlayer().getUniqueID(), event.getEntity().dimension, event.getPos());
    
     	
     	if(!config.INTERACT)
@@ -299,8 +376,7 @@ public class ProtectionsModule
     	if(event.getItemStack().getItem() instanceof ItemFood)
     		return;
     	    	
-    	DimBlockPos pos = new DimBlockPos(event.getEntity().dimension, event.getPos());
-    	ProtectionConfig config = GetProtections(event.getEntityPlayer().getUniqueID(), pos);
+    	ProtectionConfig config = GetProtections(event.getEntityPlayer().getUniqueID(), event.getEntity().dimension, event.getPos());
     	
     	if(!config.USE_ITEM)
     	{
@@ -312,7 +388,7 @@ public class ProtectionsModule
     @SubscribeEvent
     public void OnMobSpawn(PotentialSpawns event)
     {
-    	ProtectionConfig config = GetProtections(Faction.nullUuid, new DimBlockPos(event.getWorld().provider.getDimension(), event.getPos()));
+    	ProtectionConfig config = GetProtections(Faction.nullUuid, event.getWorld().provider.getDimension(), event.getPos());
     	if(!config.ALLOW_MOB_SPAWNS)
     	{
     		event.setCanceled(true);
@@ -323,11 +399,14 @@ public class ProtectionsModule
     @SubscribeEvent
     public void LivingUpdate(EnteringChunk event)
     {
+    	if(event.getEntity().world.isRemote)
+    		return;
+    	
     	if(!inLoop)
     	{
     		if(!(event.getEntity() instanceof EntityPlayer))
     		{
-		    	ProtectionConfig config = GetProtections(Faction.nullUuid, new DimBlockPos(event.getEntity().dimension, event.getEntity().getPosition()));
+		    	ProtectionConfig config = GetProtections(Faction.nullUuid, event.getEntity().dimension, event.getNewChunkX(), event.getNewChunkZ());
 		    	if(!config.ALLOW_MOB_ENTRY)
 		    	{
 		    		inLoop = true;
@@ -6,6 +6,7 @@ import net.minecraftforge.common.config.Configuration;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 public class WarForgeConfig {
@@ -153,9 +154,11 @@ public class WarForgeConfig {
     public static boolean LEGACY_USES_YIELD_TIMER = true;
     // Wealth - Vault blocks
     public static String[] VAULT_BLOCK_IDS = new String[]{"minecraft:gold_block"};
-    public static ArrayList<Block> VAULT_BLOCKS = new ArrayList<Block>();
+    public static HashSet<Block> VAULT_BLOCKS = new HashSet<Block>();
     public static float SHOW_NEW_AREA_TIMER = 200.0f;
-    public static int RANDOM_BORDER_REDRAW_DENOMINATOR = 5;
+    public static int BORDER_MESH_REBUILDS_PER_FRAME = 2;
+    public static int BORDER_RENDER_DISTANCE = 192;
+    public static int FLAG_RENDER_DISTANCE = 512;
     public static int FACTION_NAME_LENGTH_MAX = 32;
     public static boolean BLOCK_ENDER_CHEST = false;
     public static boolean SHOW_YIELD_TIMERS = true;
@@ -171,6 +174,13 @@ public class WarForgeConfig {
     public static boolean ENABLE_SPAWN_POTION_EFFECT = false; // TODO
     public static boolean ALLOW_SPAWN_BETWEEN_DIMENSIONS = false;
     public static boolean ENABLE_TPA_POTIONS = true;
+    public static boolean ENABLE_SAVE_JOURNAL = true;
+    public static int JOURNAL_SAVES_PER_SNAPSHOT = 10;
+    public static int JOURNAL_MAX_RECORDS = 20000;
+    public static int DAY_ROLLOVER_BUDGET_MS = 5;
+    public static int MAX_PACKETS_HANDLED_PER_TICK = 200;
+    public static int MAX_INFO_REQUESTS_PER_SECOND = 10;
+    public static int MAX_ACTION_PACKETS_PER_SECOND = 20;
 
 
     public static long FACTIONS_BOT_CHANNEL_ID = 799595436154683422L;
@@ -412,6 +422,17 @@ public class WarForgeConfig {
         BLOCK_ENDER_CHEST = configFile.getBoolean("Disable Ender Chest", Configuration.CATEGORY_GENERAL, BLOCK_ENDER_CHEST, "Prevent players from opening ender chests");
         ENABLE_TPA_POTIONS = configFile.getBoolean("Enable TPA Potions", Configuration.CATEGORY_GENERAL, ENABLE_TPA_POTIONS, "Allow players to craft and consume /tpa and /tpaccept style potions");
 
+        // Saving
+        ENABLE_SAVE_JOURNAL = configFile.getBoolean("Enable Save Journal", Configuration.CATEGORY_GENERAL, ENABLE_SAVE_JOURNAL, "Journal faction changes between saves instead of rewriting warforgefactions.dat on every world save");
+        JOURNAL_SAVES_PER_SNAPSHOT = configFile.getInt("Saves Per Full Snapshot", Configuration.CATEGORY_GENERAL, JOURNAL_SAVES_PER_SNAPSHOT, 1, 1000, "How many world saves can just flush the journal before warforgefactions.dat is fully rewritten");
+        JOURNAL_MAX_RECORDS = configFile.getInt("Max Journal Records", Configuration.CATEGORY_GENERAL, JOURNAL_MAX_RECORDS, 100, 1000000, "How many changes can be journaled before warforgefactions.dat is fully rewritten on the next save");
+        DAY_ROLLOVER_BUDGET_MS = configFile.getInt("Day Rollover Budget [ms]", Configuration.CATEGORY_GENERAL, DAY_ROLLOVER_BUDGET_MS, 1, 50, "How many milliseconds per tick can be spent awarding yields and advancing sieges when a day rolls over. The rest carries over to the following ticks");
+        
+        // Networking
+        MAX_PACKETS_HANDLED_PER_TICK = configFile.getInt("Max Packets Handled Per Tick", Configuration.CATEGORY_GENERAL, MAX_PACKETS_HANDLED_PER_TICK, 1, 100000, "How many packets from players the server handles per tick, shared fairly between players. The rest wait for the next tick");
+        MAX_INFO_REQUESTS_PER_SECOND = configFile.getInt("Max Info Requests Per Second", Configuration.CATEGORY_GENERAL, MAX_INFO_REQUESTS_PER_SECOND, 0, 1000, "How many faction info or leaderboard requests of each kind a player can send per second. Any more are ignored. 0 for no limit");
+        MAX_ACTION_PACKETS_PER_SECOND = configFile.getInt("Max Action Packets Per Second", Configuration.CATEGORY_GENERAL, MAX_ACTION_PACKETS_PER_SECOND, 0, 1000, "How many of each other faction action a player can send per second. Any more are ignored. 0 for no limit");
+
         //Warps
         ENABLE_F_HOME_COMMAND = configFile.getBoolean("Enable /f home Command", CATEGORY_WARPS, ENABLE_F_HOME_COMMAND, "Allow players to use /f home to teleport to their citadel");
         ENABLE_F_HOME_POTION_EFFECT = configFile.getBoolean("Enable /f home Potion", CATEGORY_WARPS, ENABLE_F_HOME_POTION_EFFECT, "Allow players to craft a potion that takes them to their citadel");
@@ -423,7 +444,9 @@ public class WarForgeConfig {
 
         // Graphics controls
         DO_FANCY_RENDERING = configFile.getBoolean("Enable WarForge Fancy Rendering", CATEGORY_CLIENT, DO_FANCY_RENDERING, "Controls whether or not fancy graphics will be enabled for this mod's rendering.");
-        RANDOM_BORDER_REDRAW_DENOMINATOR = configFile.getInt("Random Border Redraw Denominator", CATEGORY_CLIENT, RANDOM_BORDER_REDRAW_DENOMINATOR, 1, Integer.MAX_VALUE, "Sets the bound on a random number generated, which when equal to 0 calls the border redraw. Effectively 1/this chance to redraw every frame");
+        BORDER_RENDER_DISTANCE = configFile.getInt("Claim Border Render Distance", CATEGORY_CLIENT, BORDER_RENDER_DISTANCE, 16, 4096, "How far away, in blocks, claim borders are drawn. Borders are culled in groups of 4x4 chunks, so parts of a group up to 64 blocks further out may still be drawn");
+        FLAG_RENDER_DISTANCE = configFile.getInt("Citadel Flag Render Distance", CATEGORY_CLIENT, FLAG_RENDER_DISTANCE, 16, 4096, "How far away, in blocks, citadel flags are drawn");
+        BORDER_MESH_REBUILDS_PER_FRAME = configFile.getInt("Border Mesh Rebuilds Per Frame", CATEGORY_CLIENT, BORDER_MESH_REBUILDS_PER_FRAME, 1, 64, "How many claim borders that have changed can be sent off to be rebuilt each frame, nearest first");
 
         String botChannelString = configFile.getString("Discord Bot Channel ID", Configuration.CATEGORY_GENERAL, "" + FACTIONS_BOT_CHANNEL_ID, "https://github.com/Chikachi/DiscordIntegration/wiki/IMC-Feature");
         FACTIONS_BOT_CHANNEL_ID = Long.parseLong(botChannelString);
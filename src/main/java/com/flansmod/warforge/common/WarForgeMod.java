@@ -3,8 +3,9 @@ package com.flansmod.warforge.common;
 import com.flansmod.warforge.common.network.PacketSiegeCampProgressUpdate;
 import com.flansmod.warforge.common.network.SiegeCampProgressInfo;
 import com.flansmod.warforge.server.*;
-import com.flansmod.warforge.api.ObjectIntPair;
 import com.flansmod.warforge.common.blocks.TileEntitySiegeCamp;
+import com.flansmod.warforge.common.blocks.TileEntityYieldCollector;
+import com.flansmod.warforge.api.IItemYieldProvider;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockNewLeaf;
 import net.minecraft.block.BlockNewLog;
@@ -22,16 +23,23 @@ import net.minecraft.item.ItemBlock;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.*;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent.RightClickBlock;
 import net.minecraftforge.event.terraingen.PopulateChunkEvent;
 import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.ExplosionEvent;
+import net.minecraftforge.event.world.PistonEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.Mod.EventHandler;
@@ -43,6 +51,7 @@ import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerAboutToStartEvent;
 import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
+import net.minecraftforge.fml.common.eventhandler.EventPriority;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedInEvent;
@@ -65,7 +74,6 @@ import com.flansmod.warforge.common.world.WorldGenDenseOre;
 import com.flansmod.warforge.common.world.WorldGenNetherPillar;
 import com.flansmod.warforge.common.world.WorldGenShulkerFossil;
 import com.flansmod.warforge.common.world.WorldGenSlimeFountain;
-import com.google.common.io.Files;
 import com.flansmod.warforge.server.Faction.Role;
 import zone.rong.mixinbooter.ILateMixinLoader;
 
@@ -90,6 +98,12 @@ public class WarForgeMod implements ILateMixinLoader
 	public static final ProtectionsModule PROTECTIONS = new ProtectionsModule();
 	public static final TeleportsModule TELEPORTS = new TeleportsModule();
 	public static final PotionsModule POTIONS = new PotionsModule();
+	public static final FactionSavePipeline SAVES = new FactionSavePipeline();
+	public static final FactionJournal JOURNAL = new FactionJournal();
+	public static final DayRolloverScheduler DAY_ROLLOVER = new DayRolloverScheduler();
+	public static final FactionInfoSync INFO_SYNC = new FactionInfoSync();
+	public static final OnlinePlayerIndex ONLINE_PLAYERS = new OnlinePlayerIndex();
+	public static final ClaimRegistry CLAIM_REGISTRY = new ClaimRegistry();
 	
 	public static MinecraftServer MC_SERVER = null;
 	public static Random rand = new Random();
@@ -243,6 +257,7 @@ public class WarForgeMod implements ILateMixinLoader
     	long dayLength = getSiegeDayLengthMS();
 
 		FACTIONS.updateConqueredChunks(currTickTimestamp);
+		DAY_ROLLOVER.tick();
 
     	long dayNumber = (currTickTimestamp - timestampOfFirstDay) / dayLength;
 
@@ -319,33 +334,142 @@ public class WarForgeMod implements ILateMixinLoader
     	}
     }
     
-    private void blockPlacedOrRemoved(BlockEvent event, IBlockState state)
+    // Returns the faction whose citadel is in this chunk, or null
+    private static Faction getCitadelFactionAt(int dim, int chunkX, int chunkZ)
     {
-    	// Check for vault value
+		UUID factionID = FACTIONS.getClaim(dim, chunkX, chunkZ);
+		if(factionID.equals(Faction.nullUuid))
+			return null;
+		
+		Faction faction = FACTIONS.getFaction(factionID);
+		if(faction == null || faction.citadelPos == null)
+			return null;
+		
+		if(faction.citadelPos.dim != dim || faction.citadelPos.getX() >> 4 != chunkX || faction.citadelPos.getZ() >> 4 != chunkZ)
+			return null;
+		return faction;
+    }
+    
+    // Keeps the citadel vault count and the claim yield censuses up to date
+    private void countedBlockChanged(BlockEvent event, IBlockState state, int delta)
+    {
+		int dim = event.getWorld().provider.getDimension();
+		int chunkX = event.getPos().getX() >> 4;
+		int chunkZ = event.getPos().getZ() >> 4;
+		
 		if(WarForgeConfig.VAULT_BLOCKS.contains(state.getBlock()))
 		{
-			DimChunkPos chunkPos = new DimBlockPos(event.getWorld().provider.getDimension(), event.getPos()).toChunkPos();
-			UUID factionID = FACTIONS.getClaim(chunkPos);
-			if(!factionID.equals(Faction.nullUuid))
+			Faction faction = getCitadelFactionAt(dim, chunkX, chunkZ);
+			if(faction != null)
+				faction.onVaultBlockChanged(delta);
+		}
+		
+		if(state.getBlock() instanceof IItemYieldProvider yieldProv)
+		{
+			TileEntityYieldCollector collector = getYieldCollectorAt(event.getWorld(), chunkX, chunkZ);
+			if(collector != null)
+				collector.onYieldProviderChanged(yieldProv, event.getPos(), delta);
+		}
+    }
+    
+    // Returns null if the chunk has no loaded claim that collects yields
+    private TileEntityYieldCollector getYieldCollectorAt(World world, int chunkX, int chunkZ)
+    {
+		DimChunkPos chunkPos = new DimChunkPos(world.provider.getDimension(), chunkX, chunkZ);
+		Faction faction = FACTIONS.getFaction(FACTIONS.getClaim(chunkPos));
+		if(faction == null)
+			return null;
+		DimBlockPos claimPos = faction.getSpecificPosForClaim(chunkPos);
+		if(claimPos == null || !world.isBlockLoaded(claimPos.toRegularPos()))
+			return null;
+		TileEntity te = world.getTileEntity(claimPos.toRegularPos());
+		return te instanceof TileEntityYieldCollector ? (TileEntityYieldCollector)te : null;
+    }
+    
+    // Explosions and pistons move yield and vault blocks without place or break events, so those chunks count again from scratch
+	@SubscribeEvent(priority = EventPriority.LOWEST)
+	public void countedBlocksExploded(ExplosionEvent.Detonate event)
+	{
+		World world = event.getWorld();
+		if(world.isRemote)
+			return;
+		
+		int dim = world.provider.getDimension();
+		HashSet<ChunkPos> yieldChunks = new HashSet<ChunkPos>();
+		HashSet<ChunkPos> vaultChunks = new HashSet<ChunkPos>();
+		for(BlockPos pos : event.getAffectedBlocks())
+		{
+			ChunkPos chunkPos = new ChunkPos(pos);
+			Block block = world.getBlockState(pos).getBlock();
+			if(block instanceof IItemYieldProvider && yieldChunks.add(chunkPos))
+			{
+				TileEntityYieldCollector collector = getYieldCollectorAt(world, chunkPos.x, chunkPos.z);
+				if(collector != null)
+					collector.invalidateYieldCensus();
+			}
+			if(WarForgeConfig.VAULT_BLOCKS.contains(block) && vaultChunks.add(chunkPos))
+			{
+				Faction faction = getCitadelFactionAt(dim, chunkPos.x, chunkPos.z);
+				if(faction != null)
+					faction.markVaultForRecount();
+			}
+		}
+	}
+	
+	@SubscribeEvent(priority = EventPriority.LOWEST)
+	public void countedBlocksPushed(PistonEvent.Pre event)
+	{
+		World world = event.getWorld();
+		if(world.isRemote)
+			return;
+		
+		// A piston moves at most 12 blocks, one further on, in either direction along its facing
+		int dim = world.provider.getDimension();
+		BlockPos start = event.getPos();
+		BlockPos end = start.offset(event.getDirection(), 13);
+		for(int chunkX = Math.min(start.getX(), end.getX()) >> 4; chunkX <= Math.max(start.getX(), end.getX()) >> 4; chunkX++)
+		{
+			for(int chunkZ = Math.min(start.getZ(), end.getZ()) >> 4; chunkZ <= Math.max(start.getZ(), end.getZ()) >> 4; chunkZ++)
 			{
-				Faction faction = FACTIONS.getFaction(factionID);
+				TileEntityYieldCollector collector = getYieldCollectorAt(world, chunkX, chunkZ);
+				if(collector != null)
+					collector.invalidateYieldCensus();
+				
+				Faction faction = getCitadelFactionAt(dim, chunkX, chunkZ);
 				if(faction != null)
-				{
-					if(faction.citadelPos.toChunkPos().equals(chunkPos))
-					{
-						faction.evaluateVault();
-					}
-				}
+					faction.markVaultForRecount();
 			}
 		}
-    }
+	}
     
-	@SubscribeEvent
-	public void blockPlaced(BlockEvent.EntityPlaceEvent event)
+    // Block counting runs last, so it only sees places and breaks that actually go ahead
+	@SubscribeEvent(priority = EventPriority.LOWEST)
+	public void countedBlockPlaced(BlockEvent.EntityPlaceEvent event)
+	{
+		if(!event.getWorld().isRemote) 
+		{
+			countedBlockChanged(event, event.getPlacedBlock(), 1);
+		}
+	}
+	
+	@SubscribeEvent(priority = EventPriority.LOWEST)
+	public void countedBlockRemoved(BlockEvent.BreakEvent event)
 	{
 		if(!event.getWorld().isRemote) 
 		{
-			blockPlacedOrRemoved(event, event.getPlacedBlock());
+			countedBlockChanged(event, event.getState(), -1);
+		}
+	}
+	
+	@SubscribeEvent
+	public void chunkLoaded(ChunkEvent.Load event)
+	{
+		if(!event.getWorld().isRemote)
+		{
+			Chunk chunk = event.getChunk();
+			Faction faction = getCitadelFactionAt(event.getWorld().provider.getDimension(), chunk.x, chunk.z);
+			if(faction != null)
+				faction.evaluateVault(chunk);
 		}
 	}
 	
@@ -365,8 +489,6 @@ public class WarForgeMod implements ILateMixinLoader
 				TileEntitySiegeCamp siegeBlock = (TileEntitySiegeCamp) event.getWorld().getTileEntity(event.getPos());
 				if (siegeBlock != null) siegeBlock.onDestroyed();
 			}
-
-			blockPlacedOrRemoved(event, event.getState());
 		}
 	}
 
@@ -416,7 +538,7 @@ public class WarForgeMod implements ILateMixinLoader
 			} else {
 				// check if block is not claim, and if it is marked as claim, but no claim block can be found, then remove phantom claim
 				if (!isClaim(event.getWorld().getBlockState(claimPos.toRegularPos()).getBlock())) {
-					FACTIONS.getClaims().remove(claimingFaction.uuid);
+					FACTIONS.getClaims().remove(pos);
 					claimingFaction.onClaimLost(claimPos);
 				} else {
 					player.sendMessage(new TextComponentString("This chunk already has a claim"));
@@ -426,16 +548,16 @@ public class WarForgeMod implements ILateMixinLoader
 			}
     	}
 
-		ObjectIntPair<UUID> conqueredChunkInfo = FACTIONS.conqueredChunks.get(pos);
+		ConqueredChunks.Entry conqueredChunkInfo = FACTIONS.conqueredChunks.get(pos);
 		if (conqueredChunkInfo != null) {
 			// remove invalid entries if necessary, and if not then do actual comparison
-			if (conqueredChunkInfo.getLeft() == null || conqueredChunkInfo.getLeft().equals(Faction.nullUuid) || FACTIONS.getFaction(conqueredChunkInfo.getLeft()) == null) {
+			if (conqueredChunkInfo.factionID == null || conqueredChunkInfo.factionID.equals(Faction.nullUuid) || FACTIONS.getFaction(conqueredChunkInfo.factionID) == null) {
 				WarForgeMod.LOGGER.atError().log("Found invalid conquered chunk at " + pos + "; removing and permitting placement.");
 				FACTIONS.conqueredChunks.remove(pos);
-			} else if (!conqueredChunkInfo.getLeft().equals(playerFaction.uuid)) {
+			} else if (!conqueredChunkInfo.factionID.equals(playerFaction.uuid)) {
 				player.sendMessage(new TextComponentTranslation("warforge.info.chunk_is_conquered",
-						WarForgeMod.FACTIONS.getFaction(FACTIONS.conqueredChunks.get(pos).getLeft()).name,
-						formatTime(FACTIONS.conqueredChunks.get(pos).getRight())));
+						WarForgeMod.FACTIONS.getFaction(conqueredChunkInfo.factionID).name,
+						formatTime(conqueredChunkInfo.getRemainingMs(currTickTimestamp))));
 				event.setCanceled(true);
 				return;
 			}
@@ -570,7 +692,28 @@ public class WarForgeMod implements ILateMixinLoader
 		if (!event.player.world.isRemote) {
 			Faction playerFaction = FACTIONS.getFactionOfPlayer(event.player.getUniqueID());
 			if (FactionStorage.isValidFaction(playerFaction)) {
-				playerFaction.onlinePlayerCount -= 1;
+				playerFaction.onMemberOffline(event.player.getUniqueID());
+			}
+			INFO_SYNC.onPlayerLoggedOut(event.player.getUniqueID());
+		}
+	}
+
+	// Respawning creates a new player entity, and changing dimension may too, so faction online lists need the new one
+	@SubscribeEvent
+	public void playerRespawned(PlayerEvent.PlayerRespawnEvent event) {
+		refreshOnlineMember(event.player);
+	}
+
+	@SubscribeEvent
+	public void playerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+		refreshOnlineMember(event.player);
+	}
+
+	private void refreshOnlineMember(EntityPlayer player) {
+		if (!player.world.isRemote && player instanceof EntityPlayerMP) {
+			Faction playerFaction = FACTIONS.getFactionOfPlayer(player.getUniqueID());
+			if (FactionStorage.isValidFaction(playerFaction)) {
+				playerFaction.onMemberOnline((EntityPlayerMP)player);
 			}
 		}
 	}
@@ -595,7 +738,7 @@ public class WarForgeMod implements ILateMixinLoader
 
 			Faction playerFaction = FACTIONS.getFactionOfPlayer(event.player.getUniqueID());
 			if (FactionStorage.isValidFaction(playerFaction)) {
-				playerFaction.onlinePlayerCount += 1;
+				playerFaction.onMemberOnline((EntityPlayerMP)event.player);
 			}
     		
 	    	PacketTimeUpdates packet = new PacketTimeUpdates();
@@ -818,13 +961,21 @@ public class WarForgeMod implements ILateMixinLoader
 					dataFile.createNewFile(); // create new data file
 
 					// puts file in correct format with empty tags
-					CompressedStreamTools.writeCompressed(new NBTTagCompound(), new FileOutputStream(dataFile));
+					try(FileOutputStream stream = new FileOutputStream(dataFile)) {
+						CompressedStreamTools.writeCompressed(new NBTTagCompound(), stream);
+					}
 				}
 			}
 
-			NBTTagCompound tags = CompressedStreamTools.readCompressed(new FileInputStream(dataFile));
+			NBTTagCompound tags;
+			try(FileInputStream stream = new FileInputStream(dataFile)) {
+				tags = CompressedStreamTools.readCompressed(stream);
+			}
 			readFromNBT(tags);
 			LOGGER.info("Successfully loaded " + dataFile.getName());
+
+			// Old saves have no epoch, so every journal on disk is newer than them
+			JOURNAL.open(dataFile.getAbsoluteFile().getParentFile(), tags.getLong("journal-epoch"), FACTIONS);
 		}
 		catch(Exception e)
 		{
@@ -835,26 +986,38 @@ public class WarForgeMod implements ILateMixinLoader
 		currTickTimestamp = System.currentTimeMillis(); // will cause some update time to be registered immediately
 	}
 	
-	private void save(String event)
+	// Server tick of the last save. WorldEvent.Save fires once per dimension, so only the first in a tick is used
+	private static long lastSaveTick = -1L;
+
+	// Most saves just flush the journal. Every so often, or when something changed that the journal doesn't cover,
+	// the faction data is snapshotted on the server thread and handed to the save pipeline to be written in the background
+	private void save(String event, boolean coalesce)
 	{
 		try
 		{
 			if(MC_SERVER != null)
 			{
-				NBTTagCompound tags = new NBTTagCompound();
-				WriteToNBT(tags);
-				
-				File factionsFile = getFactionsFile();
-				if(factionsFile.exists()) {
-					Files.copy(factionsFile, getFactionsFileBackup());
-				}
-				else
+				if(coalesce && lastSaveTick == serverTick)
+					return;
+				lastSaveTick = serverTick;
+
+				if(coalesce && !JOURNAL.wantsSnapshot())
 				{
-					factionsFile.createNewFile();
+					JOURNAL.flush();
+					return;
 				}
-				
-				CompressedStreamTools.writeCompressed(tags, new FileOutputStream(factionsFile));
-				LOGGER.info("Successfully saved warforgefactions.dat on event - " + event);
+
+				long snapshotStart = System.nanoTime();
+				NBTTagCompound tags = new NBTTagCompound();
+				WriteToNBT(tags);
+
+				File dataFile = getFactionsFile();
+				File directory = dataFile.getAbsoluteFile().getParentFile();
+				long epoch = JOURNAL.beginSnapshot(directory);
+				tags.setLong("journal-epoch", epoch);
+
+				SAVES.submit(tags, dataFile, getFactionsFileBackup(), event, System.nanoTime() - snapshotStart,
+					() -> JOURNAL.deleteBefore(directory, epoch));
 			}
 		}
 		catch(Exception e)
@@ -870,14 +1033,20 @@ public class WarForgeMod implements ILateMixinLoader
 		if(!event.getWorld().isRemote)
 		{
 			int dimensionID = event.getWorld().provider.getDimension();
-			save("World Save - DIM " + dimensionID);
+			save("World Save - DIM " + dimensionID, true);
 		}
 	}
 	
 	@EventHandler
 	public void serverStopped(FMLServerStoppingEvent event)
 	{
-		save("Server Stop");
+		DAY_ROLLOVER.finishAll();
+		ONLINE_PLAYERS.invalidate();
+		CLAIM_REGISTRY.clear();
+		save("Server Stop", false);
+		SAVES.flush();
+		JOURNAL.close();
+		lastSaveTick = -1L;
 		MC_SERVER = null;
 	}
 
@@ -114,8 +114,7 @@ public class BlockBasicClaim extends Block implements ITileEntityProvider
 				Faction citadelFaction = WarForgeMod.FACTIONS.getFaction(claimTE.factionUUID);
 				if(citadelFaction != null)
 				{
-					PacketFactionInfo packet = new PacketFactionInfo();
-					packet.info = citadelFaction.createInfo();
+					PacketFactionInfo packet = WarForgeMod.INFO_SYNC.createPacket(citadelFaction, (EntityPlayerMP) player);
 					WarForgeMod.INSTANCE.NETWORK.sendTo(packet, (EntityPlayerMP) player);
 				}
 				else
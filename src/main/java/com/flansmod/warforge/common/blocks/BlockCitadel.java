@@ -113,8 +113,7 @@ public class BlockCitadel extends Block implements ITileEntityProvider
 				Faction citadelFaction = WarForgeMod.FACTIONS.getFaction(citadel.factionUUID);
 				if(citadelFaction != null)
 				{
-					PacketFactionInfo packet = new PacketFactionInfo();
-					packet.info = citadelFaction.createInfo();
+					PacketFactionInfo packet = WarForgeMod.INFO_SYNC.createPacket(citadelFaction, (EntityPlayerMP) player);
 					WarForgeMod.NETWORK.sendTo(packet, (EntityPlayerMP) player);
 				}
 				else
@@ -102,6 +102,40 @@ public abstract class TileEntityClaim extends TileEntity implements IClaim
 		world.notifyBlockUpdate(pos, world.getBlockState(pos), world.getBlockState(pos), 3);
 		world.scheduleBlockUpdate(pos, this.getBlockType(), 0, 0);
 		markDirty();
+		
+		// Refile under the new faction
+		if(!isInvalid())
+			WarForgeMod.CLAIM_REGISTRY.register(this);
+	}
+	
+	@Override
+	public void onLoad()
+	{
+		if(!world.isRemote)
+			WarForgeMod.CLAIM_REGISTRY.register(this);
+		else
+			WarForgeMod.proxy.OnClientClaimChanged(this);
+	}
+	
+	@Override
+	public void invalidate()
+	{
+		super.invalidate();
+		if(world == null)
+			return;
+		if(!world.isRemote)
+			WarForgeMod.CLAIM_REGISTRY.unregister(this);
+		else
+			WarForgeMod.proxy.OnClientClaimRemoved(this);
+	}
+	
+	@Override
+	public void onChunkUnload()
+	{
+		if(!world.isRemote)
+			WarForgeMod.CLAIM_REGISTRY.unregister(this);
+		else
+			WarForgeMod.proxy.OnClientClaimRemoved(this);
 	}
 	
 	
@@ -231,6 +265,9 @@ public abstract class TileEntityClaim extends TileEntity implements IClaim
 		{
 			playerFlags.add(((NBTTagString)base).getString());
 		}
+		
+		if(world != null && world.isRemote)
+			WarForgeMod.proxy.OnClientClaimChanged(this);
 	}
 	
 	@Override
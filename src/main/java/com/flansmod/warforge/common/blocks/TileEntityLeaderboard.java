@@ -1,9 +1,8 @@
 package com.flansmod.warforge.common.blocks;
 
-import java.util.ArrayList;
-
 import com.flansmod.warforge.common.WarForgeMod;
 import com.flansmod.warforge.server.Faction;
+import com.flansmod.warforge.server.Leaderboard.FactionStat;
 
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.play.server.SPacketUpdateTileEntity;
@@ -40,14 +39,13 @@ public class TileEntityLeaderboard extends TileEntity
 		// You have to get parent tags so that x, y, z are added.
 		NBTTagCompound tags = super.getUpdateTag();
 
-		ArrayList<Faction> tempList = new ArrayList<Faction>();
-		WarForgeMod.LEADERBOARD.GetSortedList(((BlockLeaderboard)getBlockType()).stat, tempList);
-		
+		FactionStat stat = ((BlockLeaderboard)getBlockType()).stat;
 		for(int i = 0; i < NUM_ENTRIES; i++)
 		{
-			if(tempList.size() > i)
+			Faction faction = WarForgeMod.LEADERBOARD.GetFactionAt(stat, i);
+			if(faction != null)
 			{
-				tags.setString("#" + i, tempList.get(i).name);
+				tags.setString("#" + i, faction.name);
 			}
 			else
 			{
@@ -1,10 +1,8 @@
 package com.flansmod.warforge.common.blocks;
 
-import java.util.Objects;
 import java.util.UUID;
 
 import com.flansmod.warforge.common.DimBlockPos;
-import com.flansmod.warforge.common.DimChunkPos;
 import com.flansmod.warforge.common.WarForgeConfig;
 import com.flansmod.warforge.common.WarForgeMod;
 import com.flansmod.warforge.common.network.PacketSiegeCampProgressUpdate;
@@ -14,7 +12,6 @@ import com.flansmod.warforge.server.Faction;
 import com.flansmod.warforge.server.Siege;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.EntityLivingBase;
-import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.init.Blocks;
 import net.minecraft.nbt.NBTTagCompound;
@@ -73,7 +70,7 @@ public class TileEntitySiegeCamp extends TileEntityClaim implements ITickable
 	public void setSiegeTarget(DimBlockPos siegeTarget) {
 		this.siegeTarget = siegeTarget;
 		defenders = getDefenders(this.siegeTarget);
-		largestSeenDefenderCount = defenders.onlinePlayerCount;
+		largestSeenDefenderCount = defenders.getOnlinePlayerCount();
 		siegeStatus = SiegeStatus.ACTIVE;
 	}
 
@@ -161,10 +158,10 @@ public class TileEntitySiegeCamp extends TileEntityClaim implements ITickable
 				PacketSiegeCampProgressUpdate packet = new PacketSiegeCampProgressUpdate();
 				packet.info = info;
 
-				for (EntityPlayer attacker : getAttacking().getOnlinePlayers(Objects::nonNull))
-					WarForgeMod.NETWORK.sendTo(packet, (EntityPlayerMP) attacker);
-				for (EntityPlayer defender : defenders.getOnlinePlayers(Objects::nonNull))
-					WarForgeMod.NETWORK.sendTo(packet, (EntityPlayerMP) defender);
+				for (EntityPlayerMP attacker : getAttacking().getOnlineMembers())
+					WarForgeMod.NETWORK.sendTo(packet, attacker);
+				for (EntityPlayerMP defender : defenders.getOnlineMembers())
+					WarForgeMod.NETWORK.sendTo(packet, defender);
 			}
 
 			// attempt to actually modify siege information, now that all nearby have been updated
@@ -274,7 +271,7 @@ public class TileEntitySiegeCamp extends TileEntityClaim implements ITickable
 			// --- ATTACKER HANDLING ---
 
 			// if there are no players in the radius
-			if (WarForgeMod.FACTIONS.getFaction(factionUUID).getOnlinePlayers(this::isPlayerInWarzone).size() < 1) {
+			if (!WarForgeMod.ONLINE_PLAYERS.anyInRadius(WarForgeMod.FACTIONS.getFaction(factionUUID), world.provider.getDimension(), getClaimPos().getX() >> 4, getClaimPos().getZ() >> 4, 1)) {
 				if (handleDesertion(true)) return; // cancel update if siege concludes
 			} else {
 				// stops at 0 and decrements gradually to stop attackers from popping into and out of warzone
@@ -293,14 +290,14 @@ public class TileEntitySiegeCamp extends TileEntityClaim implements ITickable
 
 			// --- DEFENDER HANDLING ---
 
-			if (lastSeenDefenderCount == 0 && defenders.onlinePlayerCount > 0 && defenderOfflineTimerMs > 0) {
+			if (lastSeenDefenderCount == 0 && defenders.getOnlinePlayerCount() > 0 && defenderOfflineTimerMs > 0) {
 				defenders.messageAll(new TextComponentString("Your faction [" + defenders.name + "] has an offline timer of " + WarForgeMod.formatTime(defenderOfflineTimerMs) + " for the siege camp at " + getClaimPos()));
 			}
 
-			lastSeenDefenderCount = defenders.onlinePlayerCount;
+			lastSeenDefenderCount = defenders.getOnlinePlayerCount();
 
-			if (defenders.onlinePlayerCount > largestSeenDefenderCount) largestSeenDefenderCount = defenders.onlinePlayerCount; // update largest number of defenders seen
-			int numActiveDefenders = defenders.getOnlinePlayers(entityPlayer -> isPlayerInRadius(entityPlayer, WarForgeConfig.SIEGE_DEFENDER_RADIUS)).size();
+			if (defenders.getOnlinePlayerCount() > largestSeenDefenderCount) largestSeenDefenderCount = defenders.getOnlinePlayerCount(); // update largest number of defenders seen
+			int numActiveDefenders = WarForgeMod.ONLINE_PLAYERS.countInRadius(defenders, world.provider.getDimension(), getClaimPos().getX() >> 4, getClaimPos().getZ() >> 4, WarForgeConfig.SIEGE_DEFENDER_RADIUS);
 
 			// check if the defenders have quit, and if not check if they are actively defending
 			boolean haveDefendersQuit = haveDefendersLiveQuit();
@@ -347,7 +344,7 @@ public class TileEntitySiegeCamp extends TileEntityClaim implements ITickable
 		final int MAX_PLAYERS_BEFORE_LIVE_QUIT = WarForgeConfig.MAX_OFFLINE_PLAYER_COUNT_MINIMUM < 0 ?
 				-WarForgeConfig.MAX_OFFLINE_PLAYER_COUNT_MINIMUM :
 				Math.max((int) (defenders.getMemberCount() * WarForgeConfig.MAX_OFFLINE_PLAYER_PERCENT), WarForgeConfig.MAX_OFFLINE_PLAYER_COUNT_MINIMUM);
-		return largestSeenDefenderCount > MAX_PLAYERS_BEFORE_LIVE_QUIT && defenders.onlinePlayerCount < 1;
+		return largestSeenDefenderCount > MAX_PLAYERS_BEFORE_LIVE_QUIT && defenders.getOnlinePlayerCount() < 1;
 	}
 
 	// once this exceeds the offline time, it is automatically set to -1, so passing certain amounts need not be considered
@@ -425,18 +422,6 @@ public class TileEntitySiegeCamp extends TileEntityClaim implements ITickable
 		return false;
 	}
 
-	private boolean isPlayerInWarzone(EntityPlayer player) {
-		DimChunkPos playerChunk = new DimChunkPos(player.dimension, player.getPosition());
-		DimChunkPos blockChunk = new DimChunkPos(world.provider.getDimension(), getClaimPos());
-		return !player.isDead && Siege.isPlayerInRadius(blockChunk, playerChunk);
-	}
-
-	private boolean isPlayerInRadius(EntityPlayer player, int radius) {
-		DimChunkPos playerChunk = new DimChunkPos(player.dimension, player.getPosition());
-		DimChunkPos blockChunk = new DimChunkPos(world.provider.getDimension(), getClaimPos());
-		return !player.isDead && Siege.isPlayerInRadius(blockChunk, playerChunk, radius);
-	}
-
 	private void messageAllAttackers(String translateKey, Object... args) {
 		Faction attackerFaction = WarForgeMod.FACTIONS.getFaction(factionUUID);
 		if (attackerFaction == null) return;
@@ -499,8 +484,8 @@ public class TileEntitySiegeCamp extends TileEntityClaim implements ITickable
 					nbt.getInteger("attackZ"));
 
 			defenders = getDefenders(siegeTarget);
-			largestSeenDefenderCount = defenders.onlinePlayerCount;
-			lastSeenDefenderCount = defenders.onlinePlayerCount;
+			largestSeenDefenderCount = defenders.getOnlinePlayerCount();
+			lastSeenDefenderCount = defenders.getOnlinePlayerCount();
 		} else siegeTarget = null;
 
 		if(FMLCommonHandler.instance().getEffectiveSide() == Side.SERVER) {
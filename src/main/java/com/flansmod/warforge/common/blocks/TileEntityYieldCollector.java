@@ -14,8 +14,9 @@ import net.minecraft.inventory.IInventory;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 
 public abstract class TileEntityYieldCollector extends TileEntityClaim implements IInventory
 {
@@ -26,6 +27,13 @@ public abstract class TileEntityYieldCollector extends TileEntityClaim implement
 
 	// The yield stacks are where items arrive when your faction is above a deposit
 	protected ItemStack[] yieldStacks = new ItemStack[NUM_YIELD_STACKS];
+	
+	// How many of each yield provider block sit in this chunk below HIGHEST_YIELD_ASSUMPTION. Built by one scan,
+	// then kept up to date by block place/break events. Explosions and pistons throw it away to be rescanned.
+	// Not saved, so anything else that changes the chunk (commands, other mods) is corrected when the chunk next loads.
+	// Null until first needed
+	private HashMap<IItemYieldProvider, Integer> yieldCensus = null;
+	private int yieldCensusHeight = 0;
 
 	public TileEntityYieldCollector()
 	{
@@ -37,30 +45,7 @@ public abstract class TileEntityYieldCollector extends TileEntityClaim implement
 		if(world.isRemote)
 			return;
 		
-		HashMap<IItemYieldProvider, Integer> count = new HashMap<IItemYieldProvider, Integer>();
-		
-		ChunkPos chunk = new ChunkPos(getClaimPos());
-		
-		for(int x = chunk.x * 16; x < (chunk.x + 1) * 16; x++)
-		{
-			for(int z = chunk.z * 16; z < (chunk.z + 1) * 16; z++)
-			{
-				for(int y = 0; y < WarForgeConfig.HIGHEST_YIELD_ASSUMPTION; y++)
-				{
-					Block block = world.getBlockState(new BlockPos(x, y, z)).getBlock();
-					if(block instanceof IItemYieldProvider yieldProv)
-					{
-                        if(count.containsKey(yieldProv))
-							count.replace(yieldProv, count.get(yieldProv) + 1);
-						else
-							count.put(yieldProv, 1);
-						
-					}
-				}
-			}
-		}
-		
-		for(HashMap.Entry<IItemYieldProvider, Integer> kvp : count.entrySet())
+		for(HashMap.Entry<IItemYieldProvider, Integer> kvp : getYieldCensus().entrySet())
 		{
 			if(kvp.getKey().getMultiplier() > 0.0f)
 			{
@@ -76,20 +61,76 @@ public abstract class TileEntityYieldCollector extends TileEntityClaim implement
 		markDirty();
 	}
 	
+	public HashMap<IItemYieldProvider, Integer> getYieldCensus()
+	{
+		if(yieldCensus == null || yieldCensusHeight != WarForgeConfig.HIGHEST_YIELD_ASSUMPTION)
+			rebuildYieldCensus();
+		return yieldCensus;
+	}
+	
+	public void rebuildYieldCensus()
+	{
+		yieldCensus = new HashMap<IItemYieldProvider, Integer>();
+		yieldCensusHeight = WarForgeConfig.HIGHEST_YIELD_ASSUMPTION;
+		
+		Chunk chunk = world.getChunk(getPos());
+		for(ExtendedBlockStorage storage : chunk.getBlockStorageArray())
+		{
+			if(storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty() || storage.getYLocation() >= yieldCensusHeight)
+				continue;
+			
+			int numLayers = Math.min(16, yieldCensusHeight - storage.getYLocation());
+			for(int y = 0; y < numLayers; y++)
+			{
+				for(int z = 0; z < 16; z++)
+				{
+					for(int x = 0; x < 16; x++)
+					{
+						Block block = storage.get(x, y, z).getBlock();
+						if(block instanceof IItemYieldProvider yieldProv)
+							yieldCensus.merge(yieldProv, 1, Integer::sum);
+					}
+				}
+			}
+		}
+	}
+	
+	// Called when blocks in this chunk changed in a way we couldn't follow
+	public void invalidateYieldCensus()
+	{
+		yieldCensus = null;
+	}
+	
+	// Called when a yield provider block is placed (+1) or broken (-1) in this chunk
+	public void onYieldProviderChanged(IItemYieldProvider yieldProv, BlockPos changedPos, int delta)
+	{
+		if(yieldCensus == null || changedPos.getY() >= yieldCensusHeight)
+			return;
+		
+		int newCount = yieldCensus.getOrDefault(yieldProv, 0) + delta;
+		if(newCount > 0)
+			yieldCensus.put(yieldProv, newCount);
+		else
+			yieldCensus.remove(yieldProv);
+	}
+	
 	@Override
 	public void onLoad()
 	{
+		super.onLoad();
 		if(!world.isRemote)
 		{
 			Faction faction = WarForgeMod.FACTIONS.getFaction(factionUUID);
 			if(faction != null)
 			{
-				int pendingYields = faction.claims.get(this.getClaimPos());
+				int index = faction.claims.indexOf(this.getClaimPos());
+				int pendingYields = index >= 0 ? faction.claims.getPendingYields(index) : 0;
 				if(pendingYields > 0)
 				{
 					processYield(pendingYields);
+					faction.claims.setPendingYields(index, 0);
+					WarForgeMod.JOURNAL.recordClaimSet(faction, getClaimPos(), 0);
 				}
-				faction.claims.replace(this.getClaimPos(), 0);
 			}
 			else if(!factionUUID.equals(Faction.nullUuid))
 			{
@@ -1,6 +1,5 @@
 package com.flansmod.warforge.common.mixins;
 
-import com.flansmod.warforge.common.DimBlockPos;
 import com.flansmod.warforge.common.ProtectionsModule;
 import com.flansmod.warforge.common.WarForgeConfig.ProtectionConfig;
 import com.flansmod.warforge.common.WarForgeMod;
@@ -27,8 +26,7 @@ public class SurvivalHelperMixin {
 
         if (ProtectionsModule.OP_OVERRIDE && WarForgeMod.isOp(player)) return;
 
-        DimBlockPos dimPos = new DimBlockPos(player.dimension, pos);
-        ProtectionConfig config = ProtectionsModule.GetProtections(player.getUniqueID(), dimPos);
+        ProtectionConfig config = ProtectionsModule.GetProtections(player.getUniqueID(), player.dimension, pos);
 
         if (!config.PLACE_BLOCKS) {
             if (!config.BLOCK_PLACE_EXCEPTIONS.contains(blockState.getBlock())) {
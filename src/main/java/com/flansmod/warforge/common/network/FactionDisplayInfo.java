@@ -10,6 +10,8 @@ import com.flansmod.warforge.server.Faction;
 public class FactionDisplayInfo 
 {	
 	public UUID factionId = Faction.nullUuid;
+	// Which version of the faction's info this is, so the server only has to send what changed since
+	public long version = 0L;
 	public String factionName = "";
 	public UUID mLeaderID = Faction.nullUuid;
 	public ArrayList<PlayerDisplayInfo> members = new ArrayList<PlayerDisplayInfo>();
@@ -1,126 +1,306 @@
 package com.flansmod.warforge.common.network;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
 import com.flansmod.warforge.common.CommonProxy;
 import com.flansmod.warforge.common.DimBlockPos;
 import com.flansmod.warforge.common.WarForgeMod;
 import com.flansmod.warforge.server.Faction.Role;
+import com.flansmod.warforge.server.FactionInfoSync;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 
-public class PacketFactionInfo extends PacketBase 
+// Build these with FactionInfoSync.createPacket, which knows what the receiving player already has
+public class PacketFactionInfo extends PacketBase
 {
+	public static final byte MODE_NONE = 0;
+	// Everything
+	public static final byte MODE_FULL = 1;
+	// Ranks, plus only the fields and members that changed since baseVersion
+	public static final byte MODE_DELTA = 2;
+	// Just ranks, the client's copy is up to date
+	public static final byte MODE_UNCHANGED = 3;
+
 	// Cheeky hack to make it available to the GUI
 	public static FactionDisplayInfo latestInfo = null;
-	
+	// Every faction we have been sent info on, that deltas get applied to. Client thread only
+	private static HashMap<UUID, FactionDisplayInfo> cachedInfos = new HashMap<UUID, FactionDisplayInfo>();
+
+	public byte mode = MODE_FULL;
+	// On the client, for deltas, this only has the changed fields filled in until it is applied to the cached copy
 	public FactionDisplayInfo info;
-	
+	public long baseVersion = 0L;
+	public int changedFields = 0;
+	public ArrayList<PlayerDisplayInfo> updatedMembers = new ArrayList<PlayerDisplayInfo>();
+	public ArrayList<UUID> removedMembers = new ArrayList<UUID>();
+
 	@Override
-	public void encodeInto(ChannelHandlerContext ctx, ByteBuf data) 
+	public void encodeInto(ChannelHandlerContext ctx, ByteBuf data)
 	{
-		if(info != null)
+		if(info == null)
 		{
-			data.writeBoolean(true);
-			writeUUID(data, info.factionId);
-			writeUTF(data, info.factionName);
-			
-			data.writeInt(info.notoriety);
-			data.writeInt(info.wealth);
-			data.writeInt(info.legacy);
-			
-			data.writeInt(info.notorietyRank);
-			data.writeInt(info.wealthRank);
-			data.writeInt(info.legacyRank);
-			data.writeInt(info.totalRank);
-			
-			data.writeInt(info.mNumClaims);
-			
-			data.writeInt(info.mCitadelPos.dim);
-			data.writeInt(info.mCitadelPos.getX());
-			data.writeInt(info.mCitadelPos.getY());
-			data.writeInt(info.mCitadelPos.getZ());
-			
-			// Member list
-			data.writeInt(info.members.size());
-			for(int i = 0; i < info.members.size(); i++)
-			{
-				writeUUID(data, info.members.get(i).playerUuid);
-				writeUTF(data, info.members.get(i).username);
-				data.writeInt(info.members.get(i).role.ordinal());
-			}
-			writeUUID(data, info.mLeaderID);
+			data.writeByte(MODE_NONE);
+			return;
 		}
-		else
+
+		data.writeByte(mode);
+		writeUUID(data, info.factionId);
+		data.writeLong(info.version);
+
+		// Ranks move when other factions change, so always send them
+		data.writeInt(info.notorietyRank);
+		data.writeInt(info.wealthRank);
+		data.writeInt(info.legacyRank);
+		data.writeInt(info.totalRank);
+
+		switch(mode)
 		{
-			data.writeBoolean(false);
+			case MODE_FULL:
+			{
+				writeUTF(data, info.factionName);
+
+				data.writeInt(info.notoriety);
+				data.writeInt(info.wealth);
+				data.writeInt(info.legacy);
+
+				data.writeInt(info.mNumClaims);
+				writeCitadelPos(data);
+
+				// Member list
+				data.writeInt(info.members.size());
+				for(int i = 0; i < info.members.size(); i++)
+					writeMember(data, info.members.get(i));
+				writeUUID(data, info.mLeaderID);
+				break;
+			}
+			case MODE_DELTA:
+			{
+				data.writeLong(baseVersion);
+				data.writeByte(changedFields);
+				if((changedFields & FactionInfoSync.FIELD_NAME) != 0)
+					writeUTF(data, info.factionName);
+				if((changedFields & FactionInfoSync.FIELD_STATS) != 0)
+				{
+					data.writeInt(info.notoriety);
+					data.writeInt(info.wealth);
+					data.writeInt(info.legacy);
+				}
+				if((changedFields & FactionInfoSync.FIELD_CLAIMS) != 0)
+					data.writeInt(info.mNumClaims);
+				if((changedFields & FactionInfoSync.FIELD_CITADEL) != 0)
+					writeCitadelPos(data);
+				if((changedFields & FactionInfoSync.FIELD_LEADER) != 0)
+					writeUUID(data, info.mLeaderID);
+				if((changedFields & FactionInfoSync.FIELD_MEMBERS) != 0)
+				{
+					data.writeInt(updatedMembers.size());
+					for(PlayerDisplayInfo playerInfo : updatedMembers)
+						writeMember(data, playerInfo);
+					data.writeInt(removedMembers.size());
+					for(UUID playerID : removedMembers)
+						writeUUID(data, playerID);
+				}
+				break;
+			}
+			default:
+				break;
 		}
-		
 	}
 
 	@Override
-	public void decodeInto(ChannelHandlerContext ctx, ByteBuf data) 
+	public void decodeInto(ChannelHandlerContext ctx, ByteBuf data)
 	{
-		boolean hasInfo = data.readBoolean();
-		
-		if(hasInfo)
+		mode = data.readByte();
+		if(mode == MODE_NONE)
+		{
+			info = null;
+			return;
+		}
+
+		info = new FactionDisplayInfo();
+		info.factionId = readUUID(data);
+		info.version = data.readLong();
+
+		info.notorietyRank = data.readInt();
+		info.wealthRank = data.readInt();
+		info.legacyRank = data.readInt();
+		info.totalRank = data.readInt();
+
+		switch(mode)
 		{
-			info = new FactionDisplayInfo();
-			
-			info.factionId = readUUID(data);
-			info.factionName = readUTF(data);
-			
-			info.notoriety = data.readInt();
-			info.wealth = data.readInt();
-			info.legacy = data.readInt();
-			
-			info.notorietyRank = data.readInt();
-			info.wealthRank = data.readInt();
-			info.legacyRank = data.readInt();
-			info.totalRank = data.readInt();
-			
-			info.mNumClaims = data.readInt();
-			
-			int dim =	data.readInt();
-			int x =	data.readInt();
-			int y =	data.readInt();
-			int z =	data.readInt();
-			info.mCitadelPos = new DimBlockPos(dim, x, y, z);
-			
-			// Member list
-			int count = data.readInt();
-			for(int i = 0; i < count; i++)
+			case MODE_FULL:
 			{
-				PlayerDisplayInfo playerInfo = new PlayerDisplayInfo();
-				playerInfo.playerUuid = readUUID(data);
-				playerInfo.username = readUTF(data);
-				playerInfo.role = Role.values()[data.readInt()];
-				info.members.add(playerInfo);
+				info.factionName = readUTF(data);
+
+				info.notoriety = data.readInt();
+				info.wealth = data.readInt();
+				info.legacy = data.readInt();
+
+				info.mNumClaims = data.readInt();
+				info.mCitadelPos = readCitadelPos(data);
+
+				// Member list
+				int count = data.readInt();
+				for(int i = 0; i < count; i++)
+					info.members.add(readMember(data));
+				info.mLeaderID = readUUID(data);
+				break;
 			}
-			info.mLeaderID = readUUID(data);
+			case MODE_DELTA:
+			{
+				baseVersion = data.readLong();
+				changedFields = data.readByte();
+				if((changedFields & FactionInfoSync.FIELD_NAME) != 0)
+					info.factionName = readUTF(data);
+				if((changedFields & FactionInfoSync.FIELD_STATS) != 0)
+				{
+					info.notoriety = data.readInt();
+					info.wealth = data.readInt();
+					info.legacy = data.readInt();
+				}
+				if((changedFields & FactionInfoSync.FIELD_CLAIMS) != 0)
+					info.mNumClaims = data.readInt();
+				if((changedFields & FactionInfoSync.FIELD_CITADEL) != 0)
+					info.mCitadelPos = readCitadelPos(data);
+				if((changedFields & FactionInfoSync.FIELD_LEADER) != 0)
+					info.mLeaderID = readUUID(data);
+				if((changedFields & FactionInfoSync.FIELD_MEMBERS) != 0)
+				{
+					int count = data.readInt();
+					for(int i = 0; i < count; i++)
+						updatedMembers.add(readMember(data));
+					count = data.readInt();
+					for(int i = 0; i < count; i++)
+						removedMembers.add(readUUID(data));
+				}
+				break;
+			}
+			default:
+				break;
 		}
-		else
-			info = null;
 	}
 
 	@Override
-	public void handleServerSide(EntityPlayerMP playerEntity) 
+	public void handleServerSide(EntityPlayerMP playerEntity)
 	{
 		WarForgeMod.LOGGER.error("Received FactionInfo on server");
 	}
 
 	@Override
-	public void handleClientSide(EntityPlayer clientPlayer) 
+	public void handleClientSide(EntityPlayer clientPlayer)
 	{
-		latestInfo = info;
+		FactionDisplayInfo result = info;
+		if(mode == MODE_DELTA || mode == MODE_UNCHANGED)
+		{
+			FactionDisplayInfo cached = cachedInfos.get(info.factionId);
+			long expectedVersion = mode == MODE_DELTA ? baseVersion : info.version;
+			if(cached == null || cached.version != expectedVersion)
+			{
+				// We don't have what the server thinks we have, so ask for all of it
+				WarForgeMod.LOGGER.warn("Faction info for " + info.factionId + " out of sync, requesting a full update");
+				PacketRequestFactionInfo request = new PacketRequestFactionInfo();
+				request.mFactionIDRequest = info.factionId;
+				request.mForceFull = true;
+				WarForgeMod.NETWORK.sendToServer(request);
+				return;
+			}
+			result = applyTo(cached);
+		}
+
+		if(result != null)
+			cachedInfos.put(result.factionId, result);
+
+		latestInfo = result;
 		clientPlayer.openGui(
-				WarForgeMod.INSTANCE, 
-				CommonProxy.GUI_TYPE_FACTION_INFO, 
-				clientPlayer.world, 
+				WarForgeMod.INSTANCE,
+				CommonProxy.GUI_TYPE_FACTION_INFO,
+				clientPlayer.world,
 				clientPlayer.getPosition().getX(),
 				clientPlayer.getPosition().getY(),
 				clientPlayer.getPosition().getZ());
 	}
 
+	// Makes a new info from the cached copy with our changes on top. The cached copy may still be shown by an open GUI, so leave it alone
+	private FactionDisplayInfo applyTo(FactionDisplayInfo cached)
+	{
+		FactionDisplayInfo result = new FactionDisplayInfo();
+		result.factionId = cached.factionId;
+		result.version = info.version;
+		result.notorietyRank = info.notorietyRank;
+		result.wealthRank = info.wealthRank;
+		result.legacyRank = info.legacyRank;
+		result.totalRank = info.totalRank;
+
+		boolean nameChanged = (changedFields & FactionInfoSync.FIELD_NAME) != 0;
+		boolean statsChanged = (changedFields & FactionInfoSync.FIELD_STATS) != 0;
+		result.factionName = nameChanged ? info.factionName : cached.factionName;
+		result.notoriety = statsChanged ? info.notoriety : cached.notoriety;
+		result.wealth = statsChanged ? info.wealth : cached.wealth;
+		result.legacy = statsChanged ? info.legacy : cached.legacy;
+		result.mNumClaims = (changedFields & FactionInfoSync.FIELD_CLAIMS) != 0 ? info.mNumClaims : cached.mNumClaims;
+		result.mCitadelPos = (changedFields & FactionInfoSync.FIELD_CITADEL) != 0 ? info.mCitadelPos : cached.mCitadelPos;
+		result.mLeaderID = (changedFields & FactionInfoSync.FIELD_LEADER) != 0 ? info.mLeaderID : cached.mLeaderID;
+
+		if((changedFields & FactionInfoSync.FIELD_MEMBERS) != 0)
+		{
+			HashMap<UUID, PlayerDisplayInfo> updates = new HashMap<UUID, PlayerDisplayInfo>();
+			for(PlayerDisplayInfo playerInfo : updatedMembers)
+				updates.put(playerInfo.playerUuid, playerInfo);
+
+			for(PlayerDisplayInfo playerInfo : cached.members)
+			{
+				if(removedMembers.contains(playerInfo.playerUuid))
+					continue;
+				PlayerDisplayInfo updated = updates.remove(playerInfo.playerUuid);
+				result.members.add(updated != null ? updated : playerInfo);
+			}
+			// Whatever is left over is new
+			for(PlayerDisplayInfo playerInfo : updatedMembers)
+				if(updates.containsKey(playerInfo.playerUuid))
+					result.members.add(playerInfo);
+		}
+		else
+		{
+			result.members = cached.members;
+		}
+		return result;
+	}
+
+	private void writeCitadelPos(ByteBuf data)
+	{
+		data.writeInt(info.mCitadelPos.dim);
+		data.writeInt(info.mCitadelPos.getX());
+		data.writeInt(info.mCitadelPos.getY());
+		data.writeInt(info.mCitadelPos.getZ());
+	}
+
+	private static DimBlockPos readCitadelPos(ByteBuf data)
+	{
+		int dim = data.readInt();
+		int x = data.readInt();
+		int y = data.readInt();
+		int z = data.readInt();
+		return new DimBlockPos(dim, x, y, z);
+	}
+
+	private static void writeMember(ByteBuf data, PlayerDisplayInfo playerInfo)
+	{
+		writeUUID(data, playerInfo.playerUuid);
+		writeUTF(data, playerInfo.username);
+		data.writeInt(playerInfo.role.ordinal());
+	}
+
+	private static PlayerDisplayInfo readMember(ByteBuf data)
+	{
+		PlayerDisplayInfo playerInfo = new PlayerDisplayInfo();
+		playerInfo.playerUuid = readUUID(data);
+		playerInfo.username = readUTF(data);
+		playerInfo.role = Role.values()[data.readInt()];
+		return playerInfo;
+	}
 }
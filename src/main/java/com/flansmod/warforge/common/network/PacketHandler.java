@@ -1,11 +1,20 @@
 package com.flansmod.warforge.common.network;
 
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
 
+import com.flansmod.warforge.common.WarForgeConfig;
 import com.flansmod.warforge.common.WarForgeMod;
 
 import io.netty.buffer.ByteBuf;
@@ -20,6 +29,7 @@ import net.minecraft.network.INetHandler;
 import net.minecraft.network.NetHandlerPlayServer;
 import net.minecraft.network.Packet;
 import net.minecraft.network.PacketBuffer;
+import net.minecraft.server.management.PlayerList;
 import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.network.FMLEmbeddedChannel;
 import net.minecraftforge.fml.common.network.FMLOutboundHandler;
@@ -41,21 +51,114 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 	private EnumMap<Side, FMLEmbeddedChannel> channels;
 	//The list of registered packets. Should contain no more than 256 packets.
 	private LinkedList<Class<? extends PacketBase>> packets = new LinkedList<>();
+	//How to make an empty packet of each registered class, so decoding doesn't need reflection
+	private HashMap<Class<? extends PacketBase>, Supplier<? extends PacketBase>> factories = new HashMap<>();
+	//How many of each packet a single player may send per second, 0 for no limit
+	private HashMap<Class<? extends PacketBase>, Integer> rateLimits = new HashMap<>();
 	//Whether or not Flan's Mod has initialised yet. Once true, no more packets may be registered.
 	private boolean modInitialised = false;
 	
+	/**
+	 * Lookup tables frozen from the sorted packet list in postInitialise. Only read after that, so safe from the netty threads
+	 */
+	private HashMap<Class<? extends PacketBase>, Integer> discriminators = new HashMap<>();
+	private Supplier<? extends PacketBase>[] factoriesByDiscriminator = null;
+	//Size of the last packet of each type, so the next one usually gets a buffer that doesn't need to grow
+	private int[] sizeHints = null;
+	private static final int DEFAULT_SIZE_HINT = 64;
+	private int[] rateLimitsByDiscriminator = null;
+	
+	/**
+	 * Packets received from one player, waiting for the server thread
+	 */
+	private static class ServerInbox
+	{
+		final ConcurrentLinkedQueue<PacketBase> packets = new ConcurrentLinkedQueue<>();
+		//Rate limit counters. Only touched from the netty thread of this player's connection
+		final int[] numReceivedThisSecond;
+		long secondStartMs = 0L;
+		
+		ServerInbox(int numPacketTypes)
+		{
+			numReceivedThisSecond = new int[numPacketTypes];
+		}
+		
+		boolean tryAccept(int discriminator, int rateLimit)
+		{
+			if(rateLimit <= 0)
+				return true;
+			
+			long now = System.currentTimeMillis();
+			if(now - secondStartMs >= 1000L)
+			{
+				secondStartMs = now;
+				Arrays.fill(numReceivedThisSecond, 0);
+			}
+			return ++numReceivedThisSecond[discriminator] <= rateLimit;
+		}
+	}
+	
 	/**
 	 * Store received packets in these queues and have the main Minecraft threads use these
 	 */
 	private ConcurrentLinkedQueue<PacketBase> receivedPacketsClient = new ConcurrentLinkedQueue<>();
-	private HashMap<String, ConcurrentLinkedQueue<PacketBase>> receivedPacketsServer = new HashMap<>();
+	private ConcurrentHashMap<UUID, ServerInbox> receivedPacketsServer = new ConcurrentHashMap<>();
+	//Which player gets served first next tick, so that a tight budget doesn't always favour the same players
+	private int serverRoundRobinOffset = 0;
+	
+	private final AtomicLong numServerPacketsHandled = new AtomicLong();
+	private final AtomicLong numServerPacketsDropped = new AtomicLong();
+	private final AtomicLong numServerPacketsDeferred = new AtomicLong();
+	private AtomicLongArray numDroppedByDiscriminator = null;
 	
 	/**
-	 * Registers a packet with the handler
+	 * Registers a packet with the handler, creating empty packets through its no-args constructor
 	 */
 	public boolean registerPacket(Class<? extends PacketBase> cl)
 	{
-		if(packets.size() > 256)
+		Constructor<? extends PacketBase> constructor;
+		try
+		{
+			constructor = cl.getConstructor();
+		}
+		catch(NoSuchMethodException e)
+		{
+			WarForgeMod.LOGGER.warn("Tried to register packet " + cl.getCanonicalName() + " without a no-args constructor.");
+			return false;
+		}
+		
+		return addPacket(cl, () -> 
+		{
+			try
+			{
+				return constructor.newInstance();
+			}
+			catch(ReflectiveOperationException e)
+			{
+				throw new RuntimeException("Could not create packet " + cl.getCanonicalName(), e);
+			}
+		}, 0);
+	}
+	
+	/**
+	 * Registers a packet with the handler, along with a factory for creating empty packets to decode into
+	 */
+	public <T extends PacketBase> boolean registerPacket(Class<T> cl, Supplier<T> factory)
+	{
+		return addPacket(cl, factory, 0);
+	}
+	
+	/**
+	 * Registers a packet sent by clients, which each player may only send so many times per second. Any more are dropped
+	 */
+	public <T extends PacketBase> boolean registerPacket(Class<T> cl, Supplier<T> factory, int maxPerSecond)
+	{
+		return addPacket(cl, factory, maxPerSecond);
+	}
+	
+	private boolean addPacket(Class<? extends PacketBase> cl, Supplier<? extends PacketBase> factory, int maxPerSecond)
+	{
+		if(packets.size() >= 256)
 		{
 			WarForgeMod.LOGGER.warn("Packet limit exceeded in Flan's Mod packet handler by packet " + cl.getCanonicalName() + ".");
 			return false;
@@ -72,6 +175,8 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 		}
 		
 		packets.add(cl);
+		factories.put(cl, factory);
+		rateLimits.put(cl, maxPerSecond);
 		return true;
 	}
 	
@@ -80,23 +185,26 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 	{
 		try
 		{
-			//Define a new buffer to store our data upon encoding
-			ByteBuf encodedData = Unpooled.buffer();
 			//Get the packet class
 			Class<? extends PacketBase> cl = msg.getClass();
 			
+			//Like a packet ID. Stored as the first entry in the packet code for recognition
+			Integer discriminator = discriminators.get(cl);
+			
 			//If this packet has not been registered by our handler, reject it
-			if(!packets.contains(cl))
+			if(discriminator == null)
 				throw new NullPointerException("Packet not registered : " + cl.getCanonicalName());
 			
-			//Like a packet ID. Stored as the first entry in the packet code for recognition
-			byte discriminator = (byte)packets.indexOf(cl);
+			//Define a new buffer to store our data upon encoding. It is handed straight to the proxy packet, which may be 
+			//sent to several players and is never released, so it has to be a plain heap buffer rather than a pooled one
+			ByteBuf encodedData = Unpooled.buffer(sizeHints[discriminator]);
 			encodedData.writeByte(discriminator);
 			//Get the packet class to encode our packet
 			msg.encodeInto(ctx, encodedData);
+			sizeHints[discriminator] = Math.max(DEFAULT_SIZE_HINT, encodedData.writerIndex());
 			
 			//Convert our packet into a Forge packet to get it through the Netty system
-			FMLProxyPacket proxyPacket = new FMLProxyPacket(new PacketBuffer(encodedData.copy()), ctx.channel().attr(NetworkRegistry.FML_CHANNEL).get());
+			FMLProxyPacket proxyPacket = new FMLProxyPacket(new PacketBuffer(encodedData), ctx.channel().attr(NetworkRegistry.FML_CHANNEL).get());
 			//Add our packet to the outgoing packet queue
 			out.add(proxyPacket);
 		}
@@ -115,15 +223,14 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 			//Get the encoded data from the incoming packet
 			ByteBuf encodedData = msg.payload();
 			//Get the class for interpreting this packet
-			byte discriminator = encodedData.readByte();
-			Class<? extends PacketBase> cl = packets.get(discriminator);
+			int discriminator = encodedData.readUnsignedByte();
 			
 			//If this discriminator returns no class, reject it
-			if(cl == null)
+			if(factoriesByDiscriminator == null || discriminator >= factoriesByDiscriminator.length)
 				throw new NullPointerException("Packet not registered for discriminator : " + discriminator);
 			
 			//Create an empty packet and decode our packet data into it
-			PacketBase packet = cl.getConstructor().newInstance();
+			PacketBase packet = factoriesByDiscriminator[discriminator].get();
 			packet.decodeInto(ctx, encodedData.slice());
 			//Check the side and handle our packet accordingly
 			switch(FMLCommonHandler.instance().getEffectiveSide())
@@ -138,9 +245,16 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 				{
 					INetHandler netHandler = ctx.channel().attr(NetworkRegistry.NET_HANDLER).get();
 					EntityPlayer player = ((NetHandlerPlayServer)netHandler).player;
-					if(!receivedPacketsServer.containsKey(player.getName()))
-						receivedPacketsServer.put(player.getName(), new ConcurrentLinkedQueue<>());
-					receivedPacketsServer.get(player.getName()).offer(packet);
+					ServerInbox inbox = receivedPacketsServer.computeIfAbsent(player.getUniqueID(), (id) -> new ServerInbox(factoriesByDiscriminator.length));
+					if(inbox.tryAccept(discriminator, rateLimitsByDiscriminator[discriminator]))
+					{
+						inbox.packets.offer(packet);
+					}
+					else
+					{
+						numServerPacketsDropped.incrementAndGet();
+						numDroppedByDiscriminator.incrementAndGet(discriminator);
+					}
 					//packet.handleServerSide();
 					break;
 				}
@@ -163,18 +277,83 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 		}
 	}
 	
+	/**
+	 * Handles up to the configured number of packets per tick, taking one from each player in turn so that a player 
+	 * spamming requests can't hold up everybody else. Anything left over waits for the next tick
+	 */
 	public void handleServerPackets()
 	{
-		for(String playerName : receivedPacketsServer.keySet())
+		if(receivedPacketsServer.isEmpty())
+			return;
+		
+		PlayerList playerList = FMLCommonHandler.instance().getMinecraftServerInstance().getPlayerList();
+		ArrayList<EntityPlayerMP> players = new ArrayList<>(receivedPacketsServer.size());
+		ArrayList<ServerInbox> inboxes = new ArrayList<>(receivedPacketsServer.size());
+		for(UUID playerID : receivedPacketsServer.keySet())
 		{
-			ConcurrentLinkedQueue<PacketBase> receivedPacketsFromPlayer = receivedPacketsServer.get(playerName);
-			EntityPlayerMP player = FMLCommonHandler.instance().getMinecraftServerInstance().getPlayerList().getPlayerByUsername(playerName);
-			while(!receivedPacketsFromPlayer.isEmpty())
+			EntityPlayerMP player = playerList.getPlayerByUUID(playerID);
+			if(player == null)
 			{
-				PacketBase packet = receivedPacketsFromPlayer.poll();
-				packet.handleServerSide(player);
+				//Logged out, nobody to handle these for
+				ServerInbox inbox = receivedPacketsServer.remove(playerID);
+				if(inbox != null)
+					numServerPacketsDropped.addAndGet(inbox.packets.size());
+				continue;
 			}
+			players.add(player);
+			inboxes.add(receivedPacketsServer.get(playerID));
 		}
+		
+		int numPlayers = players.size();
+		if(numPlayers == 0)
+			return;
+		
+		int start = Math.floorMod(serverRoundRobinOffset++, numPlayers);
+		int budget = WarForgeConfig.MAX_PACKETS_HANDLED_PER_TICK;
+		boolean handledAny = true;
+		while(budget > 0 && handledAny)
+		{
+			handledAny = false;
+			for(int i = 0; i < numPlayers && budget > 0; i++)
+			{
+				int index = (start + i) % numPlayers;
+				PacketBase packet = inboxes.get(index).packets.poll();
+				if(packet == null)
+					continue;
+				
+				packet.handleServerSide(players.get(index));
+				numServerPacketsHandled.incrementAndGet();
+				handledAny = true;
+				budget--;
+			}
+		}
+		
+		for(ServerInbox inbox : inboxes)
+			numServerPacketsDeferred.addAndGet(inbox.packets.size());
+	}
+	
+	public long getNumServerPacketsHandled() { return numServerPacketsHandled.get(); }
+	public long getNumServerPacketsDropped() { return numServerPacketsDropped.get(); }
+	// Counts once per packet per tick it had to wait
+	public long getNumServerPacketsDeferred() { return numServerPacketsDeferred.get(); }
+	
+	/**
+	 * Packets dropped for exceeding their rate limit, by packet name. Only lists packets that have been dropped
+	 */
+	public HashMap<String, Long> getNumDroppedByPacket()
+	{
+		HashMap<String, Long> dropped = new HashMap<>();
+		if(numDroppedByDiscriminator == null)
+			return dropped;
+		
+		int discriminator = 0;
+		for(Class<? extends PacketBase> cl : packets)
+		{
+			long numDropped = numDroppedByDiscriminator.get(discriminator++);
+			if(numDropped > 0)
+				dropped.put(cl.getSimpleName(), numDropped);
+		}
+		return dropped;
 	}
 	
 	/**
@@ -184,20 +363,23 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 	{
 		channels = NetworkRegistry.INSTANCE.newChannel("WarForgeMod", this);
 		
-		registerPacket(PacketCreateFaction.class);
-		registerPacket(PacketRequestFactionInfo.class);
-		registerPacket(PacketFactionInfo.class);
-		registerPacket(PacketSiegeCampInfo.class);
-		registerPacket(PacketSiegeCampProgressUpdate.class);
-		registerPacket(PacketStartSiege.class);
-		registerPacket(PacketLeaderboardInfo.class);
-		registerPacket(PacketRequestLeaderboardInfo.class);
-		registerPacket(PacketDisbandFaction.class);
-		registerPacket(PacketRemoveClaim.class);
-		registerPacket(PacketPlaceFlag.class);
-		registerPacket(PacketTimeUpdates.class);
-		registerPacket(PacketSetFactionColour.class);
-		registerPacket(PacketMoveCitadel.class);
+		//Client to server
+		registerPacket(PacketCreateFaction.class, PacketCreateFaction::new, WarForgeConfig.MAX_ACTION_PACKETS_PER_SECOND);
+		registerPacket(PacketRequestFactionInfo.class, PacketRequestFactionInfo::new, WarForgeConfig.MAX_INFO_REQUESTS_PER_SECOND);
+		registerPacket(PacketStartSiege.class, PacketStartSiege::new, WarForgeConfig.MAX_ACTION_PACKETS_PER_SECOND);
+		registerPacket(PacketRequestLeaderboardInfo.class, PacketRequestLeaderboardInfo::new, WarForgeConfig.MAX_INFO_REQUESTS_PER_SECOND);
+		registerPacket(PacketDisbandFaction.class, PacketDisbandFaction::new, WarForgeConfig.MAX_ACTION_PACKETS_PER_SECOND);
+		registerPacket(PacketRemoveClaim.class, PacketRemoveClaim::new, WarForgeConfig.MAX_ACTION_PACKETS_PER_SECOND);
+		registerPacket(PacketPlaceFlag.class, PacketPlaceFlag::new, WarForgeConfig.MAX_ACTION_PACKETS_PER_SECOND);
+		registerPacket(PacketSetFactionColour.class, PacketSetFactionColour::new, WarForgeConfig.MAX_ACTION_PACKETS_PER_SECOND);
+		registerPacket(PacketMoveCitadel.class, PacketMoveCitadel::new, WarForgeConfig.MAX_ACTION_PACKETS_PER_SECOND);
+		
+		//Server to client
+		registerPacket(PacketFactionInfo.class, PacketFactionInfo::new);
+		registerPacket(PacketSiegeCampInfo.class, PacketSiegeCampInfo::new);
+		registerPacket(PacketSiegeCampProgressUpdate.class, PacketSiegeCampProgressUpdate::new);
+		registerPacket(PacketLeaderboardInfo.class, PacketLeaderboardInfo::new);
+		registerPacket(PacketTimeUpdates.class, PacketTimeUpdates::new);
 	}
 	
 	/**
@@ -218,6 +400,23 @@ public class PacketHandler extends MessageToMessageCodec<FMLProxyPacket, PacketB
 				com = c1.getCanonicalName().compareTo(c2.getCanonicalName());
 			return com;
 		});
+		
+		//Freeze the sorted list into lookup tables, so encoding and decoding don't have to search it
+		@SuppressWarnings("unchecked")
+		Supplier<? extends PacketBase>[] factoryTable = new Supplier[packets.size()];
+		rateLimitsByDiscriminator = new int[packets.size()];
+		int discriminator = 0;
+		for(Class<? extends PacketBase> cl : packets)
+		{
+			discriminators.put(cl, discriminator);
+			factoryTable[discriminator] = factories.get(cl);
+			rateLimitsByDiscriminator[discriminator] = rateLimits.get(cl);
+			discriminator++;
+		}
+		sizeHints = new int[packets.size()];
+		Arrays.fill(sizeHints, DEFAULT_SIZE_HINT);
+		numDroppedByDiscriminator = new AtomicLongArray(packets.size());
+		factoriesByDiscriminator = factoryTable;
 	}
 	
 	@SideOnly(Side.CLIENT)
@@ -14,12 +14,15 @@ public class PacketRequestFactionInfo extends PacketBase
 {
 	public UUID mFactionIDRequest = Faction.nullUuid;
 	public String mFactionNameRequest = "";
+	// Set by a client that couldn't apply a delta, to get all of the info again
+	public boolean mForceFull = false;
 	
 	@Override
 	public void encodeInto(ChannelHandlerContext ctx, ByteBuf data) 
 	{
 		writeUUID(data, mFactionIDRequest);
 		writeUTF(data, mFactionNameRequest);
+		data.writeBoolean(mForceFull);
 	}
 
 	@Override
@@ -27,6 +30,7 @@ public class PacketRequestFactionInfo extends PacketBase
 	{
 		mFactionIDRequest = readUUID(data);
 		mFactionNameRequest = readUTF(data);
+		mForceFull = data.readBoolean();
 	}
 
 	@Override
@@ -48,8 +52,9 @@ public class PacketRequestFactionInfo extends PacketBase
 		
 		if(faction != null)
 		{
-			PacketFactionInfo packet = new PacketFactionInfo();
-			packet.info = faction.createInfo();
+			if(mForceFull)
+				WarForgeMod.INFO_SYNC.forget(playerEntity, faction);
+			PacketFactionInfo packet = WarForgeMod.INFO_SYNC.createPacket(faction, playerEntity);
 			WarForgeMod.INSTANCE.NETWORK.sendTo(packet, playerEntity);
 		}
 		else
@@ -0,0 +1,186 @@
+package com.flansmod.warforge.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+import com.flansmod.warforge.common.DimChunkPos;
+
+// Chunk -> owning faction lookup, used for every protection check, so it is kept free of per-query allocations.
+// Chunks are packed into a single long and stored in an open addressing table (linear probing, backward shift deletion)
+// Faction UUIDs are interned into small ints, the value 0 marks an empty slot
+public class ClaimIndex
+{
+	// Chunk coords in a 30M block world fit in 22 bits, leaving 20 bits of dimension ID
+	private static final int COORD_BITS = 22;
+	private static final int DIM_BITS = 64 - 2 * COORD_BITS;
+	private static final long COORD_MASK = (1L << COORD_BITS) - 1L;
+	private static final long DIM_MASK = (1L << DIM_BITS) - 1L;
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private int[] values = new int[INITIAL_CAPACITY];
+	private int size = 0;
+	// Bumped on every change, so caches built on top of this can tell when they are stale
+	private long modCount = 0;
+	private int resizeThreshold = (int)(INITIAL_CAPACITY * LOAD_FACTOR);
+
+	// Index 0 is reserved for "no faction"
+	private final ArrayList<UUID> internedIDs = new ArrayList<UUID>();
+	private final HashMap<UUID, Integer> internLookup = new HashMap<UUID, Integer>();
+
+	public ClaimIndex()
+	{
+		internedIDs.add(null);
+	}
+
+	public static long pack(int dim, int chunkX, int chunkZ)
+	{
+		return ((dim & DIM_MASK) << (2 * COORD_BITS))
+			| ((chunkX & COORD_MASK) << COORD_BITS)
+			| (chunkZ & COORD_MASK);
+	}
+
+	public static int unpackDim(long key) { return (int)(key >> (2 * COORD_BITS)); }
+	public static int unpackX(long key) { return (int)(key << DIM_BITS >> (DIM_BITS + COORD_BITS)); }
+	public static int unpackZ(long key) { return (int)(key << (DIM_BITS + COORD_BITS) >> (DIM_BITS + COORD_BITS)); }
+
+	public int size() { return size; }
+	public long getModCount() { return modCount; }
+
+	public UUID get(DimChunkPos pos)
+	{
+		return get(pos.mDim, pos.x, pos.z);
+	}
+
+	// Returns null if the chunk is unclaimed
+	public UUID get(int dim, int chunkX, int chunkZ)
+	{
+		return internedIDs.get(values[find(pack(dim, chunkX, chunkZ))]);
+	}
+
+	public boolean containsKey(DimChunkPos pos)
+	{
+		return values[find(pack(pos.mDim, pos.x, pos.z))] != 0;
+	}
+
+	public void put(DimChunkPos pos, UUID factionID)
+	{
+		put(pos.mDim, pos.x, pos.z, factionID);
+	}
+
+	public void put(int dim, int chunkX, int chunkZ, UUID factionID)
+	{
+		long key = pack(dim, chunkX, chunkZ);
+		int slot = find(key);
+		if(values[slot] == 0)
+		{
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = intern(factionID);
+		modCount++;
+
+		if(size > resizeThreshold)
+			rehash(keys.length * 2);
+	}
+
+	// Returns the faction that held the claim, or null if there was none
+	public UUID remove(DimChunkPos pos)
+	{
+		return remove(pos.mDim, pos.x, pos.z);
+	}
+
+	public UUID remove(int dim, int chunkX, int chunkZ)
+	{
+		int slot = find(pack(dim, chunkX, chunkZ));
+		int value = values[slot];
+		if(value == 0)
+			return null;
+
+		size--;
+		modCount++;
+		shiftBack(slot);
+		return internedIDs.get(value);
+	}
+
+	public void clear()
+	{
+		Arrays.fill(values, 0);
+		size = 0;
+		modCount++;
+	}
+
+	// Finds the slot holding this key, or the empty slot where it would be inserted
+	private int find(long key)
+	{
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while(values[slot] != 0 && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	// Closes the gap left at a removed slot by pulling back any entry that probed past it
+	private void shiftBack(int gap)
+	{
+		int mask = keys.length - 1;
+		int slot = gap;
+		while(true)
+		{
+			slot = (slot + 1) & mask;
+			if(values[slot] == 0)
+				break;
+
+			int home = mix(keys[slot]) & mask;
+			// Only move the entry if its home slot is not between the gap and its current slot
+			if(((slot - home) & mask) >= ((slot - gap) & mask))
+			{
+				keys[gap] = keys[slot];
+				values[gap] = values[slot];
+				gap = slot;
+			}
+		}
+		values[gap] = 0;
+	}
+
+	private void rehash(int newCapacity)
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[newCapacity];
+		values = new int[newCapacity];
+		resizeThreshold = (int)(newCapacity * LOAD_FACTOR);
+
+		for(int i = 0; i < oldKeys.length; i++)
+		{
+			if(oldValues[i] != 0)
+			{
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private int intern(UUID factionID)
+	{
+		Integer index = internLookup.get(factionID);
+		if(index == null)
+		{
+			index = internedIDs.size();
+			internedIDs.add(factionID);
+			internLookup.put(factionID, index);
+		}
+		return index;
+	}
+
+	private static int mix(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,97 @@
+package com.flansmod.warforge.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.UUID;
+
+import com.flansmod.warforge.common.DimBlockPos;
+import com.flansmod.warforge.common.blocks.IClaim;
+
+// Claim tile entities that are currently loaded on the server, by faction and by position.
+// Claims add themselves when they load and remove themselves when they are invalidated or their chunk unloads,
+// so faction-wide updates can go straight to the faction's loaded claims instead of sweeping every loaded tile entity
+public class ClaimRegistry
+{
+	private static class Registration
+	{
+		final IClaim claim;
+		final UUID factionID;
+
+		Registration(IClaim claim, UUID factionID)
+		{
+			this.claim = claim;
+			this.factionID = factionID;
+		}
+	}
+
+	private final HashMap<DimBlockPos, Registration> claimsByPos = new HashMap<DimBlockPos, Registration>();
+	private final HashMap<UUID, HashMap<DimBlockPos, IClaim>> claimsByFaction = new HashMap<UUID, HashMap<DimBlockPos, IClaim>>();
+
+	public int getNumLoadedClaims() { return claimsByPos.size(); }
+	public int getNumFactions() { return claimsByFaction.size(); }
+
+	public int getNumLoadedClaims(UUID factionID)
+	{
+		HashMap<DimBlockPos, IClaim> claims = claimsByFaction.get(factionID);
+		return claims == null ? 0 : claims.size();
+	}
+
+	// Adds the claim, or refiles it if its faction changed
+	public void register(IClaim claim)
+	{
+		DimBlockPos pos = claim.getClaimPos();
+		UUID factionID = claim.getFaction();
+		Registration existing = claimsByPos.get(pos);
+		if(existing != null)
+		{
+			if(existing.claim == claim && existing.factionID.equals(factionID))
+				return;
+			removeFromFaction(existing.factionID, pos);
+		}
+
+		claimsByPos.put(pos, new Registration(claim, factionID));
+		claimsByFaction.computeIfAbsent(factionID, (id) -> new HashMap<DimBlockPos, IClaim>()).put(pos, claim);
+	}
+
+	public void unregister(IClaim claim)
+	{
+		DimBlockPos pos = claim.getClaimPos();
+		Registration existing = claimsByPos.get(pos);
+		// A replacement tile entity may already have registered itself here
+		if(existing == null || existing.claim != claim)
+			return;
+
+		claimsByPos.remove(pos);
+		removeFromFaction(existing.factionID, pos);
+	}
+
+	// Returns null if there is no claim loaded there
+	public IClaim getLoadedClaim(DimBlockPos pos)
+	{
+		Registration registration = claimsByPos.get(pos);
+		return registration == null ? null : registration.claim;
+	}
+
+	public Collection<IClaim> getLoadedClaims(UUID factionID)
+	{
+		HashMap<DimBlockPos, IClaim> claims = claimsByFaction.get(factionID);
+		return claims == null ? Collections.emptyList() : Collections.unmodifiableCollection(claims.values());
+	}
+
+	public void clear()
+	{
+		claimsByPos.clear();
+		claimsByFaction.clear();
+	}
+
+	private void removeFromFaction(UUID factionID, DimBlockPos pos)
+	{
+		HashMap<DimBlockPos, IClaim> claims = claimsByFaction.get(factionID);
+		if(claims == null)
+			return;
+		claims.remove(pos);
+		if(claims.isEmpty())
+			claimsByFaction.remove(factionID);
+	}
+}
@@ -65,7 +65,7 @@ public class CommandFactions extends CommandBase
 	private static final String[] tabCompletionsOp = new String[] { 
 			"invite", "accept", "disband", "expel", "leave", "time", "info", "top", "notoriety", "wealth", "legacy",
 			"promote", "demote", "msg", "flag", "setleader",
-			"safe", "war", "protection", "resetflagcooldowns",
+			"safe", "war", "protection", "resetflagcooldowns", "checkindexes", "protectioncache", "rollover", "packets", "loadedclaims",
 	};
 	
 	@Override
@@ -352,8 +352,7 @@ public class CommandFactions extends CommandBase
 						if (senderFaction == null || senderFaction.uuid.equals(Faction.nullUuid) || !senderFaction.equals(factionToSend)) {
 							sender.sendMessage(new TextComponentString("Information cannot be provided to non-faction members"));
 						} else {
-							PacketFactionInfo packet = new PacketFactionInfo();
-							packet.info = factionToSend.createInfo();
+							PacketFactionInfo packet = WarForgeMod.INFO_SYNC.createPacket(factionToSend, (EntityPlayerMP)sender);
 							WarForgeMod.NETWORK.sendTo(packet, (EntityPlayerMP)sender);
 						}
 					}
@@ -674,6 +673,72 @@ public class CommandFactions extends CommandBase
 				}
 				break;
 			}
+			case "checkindex":
+			case "checkindexes":
+			{
+				if(WarForgeMod.isOp(sender))
+				{
+					int numErrors = WarForgeMod.FACTIONS.verifyPlayerIndex();
+					sender.sendMessage(new TextComponentString("Player index check found " + numErrors + " discrepancies"));
+				}
+				break;
+			}
+			case "protectioncache":
+			{
+				if(WarForgeMod.isOp(sender))
+				{
+					long hits = ProtectionsModule.CACHE.getHits();
+					long misses = ProtectionsModule.CACHE.getMisses();
+					long total = hits + misses;
+					sender.sendMessage(new TextComponentString("Protection cache: " + hits + " hits, " + misses + " misses"
+							+ (total > 0 ? " (" + (hits * 100 / total) + "% hit rate)" : "")));
+					if(args.length >= 2 && args[1].equals("reset"))
+						ProtectionsModule.CACHE.resetCounters();
+				}
+				break;
+			}
+			case "rollover":
+			{
+				if(WarForgeMod.isOp(sender))
+				{
+					DayRolloverScheduler.Rollover current = WarForgeMod.DAY_ROLLOVER.getCurrent();
+					DayRolloverScheduler.Rollover last = WarForgeMod.DAY_ROLLOVER.getLastFinished();
+					sender.sendMessage(new TextComponentString(current == null ? "No day rollover in progress"
+							: "In progress: " + current + ", " + WarForgeMod.DAY_ROLLOVER.getNumPendingSteps() + " steps queued"));
+					if(last != null)
+						sender.sendMessage(new TextComponentString("Last finished: " + last));
+				}
+				break;
+			}
+			case "packets":
+			{
+				if(WarForgeMod.isOp(sender))
+				{
+					sender.sendMessage(new TextComponentString("Packets from players: " + WarForgeMod.NETWORK.getNumServerPacketsHandled() + " handled, "
+							+ WarForgeMod.NETWORK.getNumServerPacketsDropped() + " dropped, " + WarForgeMod.NETWORK.getNumServerPacketsDeferred() + " deferrals"));
+					for(HashMap.Entry<String, Long> kvp : WarForgeMod.NETWORK.getNumDroppedByPacket().entrySet())
+						sender.sendMessage(new TextComponentString(" " + kvp.getKey() + ": " + kvp.getValue() + " dropped by rate limit"));
+				}
+				break;
+			}
+			case "loadedclaims":
+			{
+				if(WarForgeMod.isOp(sender))
+				{
+					sender.sendMessage(new TextComponentString("Loaded claims: " + WarForgeMod.CLAIM_REGISTRY.getNumLoadedClaims()
+							+ " across " + WarForgeMod.CLAIM_REGISTRY.getNumFactions() + " factions"));
+					if(args.length >= 2)
+					{
+						Faction target = WarForgeMod.FACTIONS.getFaction(args[1]);
+						if(target == null)
+							sender.sendMessage(new TextComponentString("Could not find faction " + args[1]));
+						else
+							sender.sendMessage(new TextComponentString(" " + target.name + ": " + WarForgeMod.CLAIM_REGISTRY.getNumLoadedClaims(target.uuid)
+									+ " loaded of " + target.claims.size()));
+					}
+				}
+				break;
+			}
 			case "tpa":
 			case "tpaccept":
 			case "tp":
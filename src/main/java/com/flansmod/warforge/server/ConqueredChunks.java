@@ -0,0 +1,88 @@
+package com.flansmod.warforge.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+import com.flansmod.warforge.common.DimChunkPos;
+
+// Chunks that only the faction that last won a siege on them may claim, until their grace period runs out.
+// Entries hold an absolute expiry timestamp and sit in a queue ordered by it, so expiring them only looks at the entries
+// that are actually due. Replaced or removed entries are left in the queue and skipped when they reach the front
+public class ConqueredChunks
+{
+	public static class Entry
+	{
+		public final DimChunkPos pos;
+		public final UUID factionID;
+		public final long expiresAt;
+
+		private Entry(DimChunkPos pos, UUID factionID, long expiresAt)
+		{
+			this.pos = pos;
+			this.factionID = factionID;
+			this.expiresAt = expiresAt;
+		}
+
+		public long getRemainingMs(long now)
+		{
+			return Math.max(0L, expiresAt - now);
+		}
+	}
+
+	private final HashMap<DimChunkPos, Entry> entries = new HashMap<DimChunkPos, Entry>();
+	private final PriorityQueue<Entry> expiryQueue = new PriorityQueue<Entry>(
+		(a, b) -> Long.compare(a.expiresAt, b.expiresAt));
+
+	public int size() { return entries.size(); }
+	public Collection<Entry> getEntries() { return Collections.unmodifiableCollection(entries.values()); }
+
+	// Returns null if the chunk is not conquered
+	public Entry get(DimChunkPos pos)
+	{
+		return entries.get(pos);
+	}
+
+	public void put(DimChunkPos pos, UUID factionID, long durationMs, long now)
+	{
+		Entry entry = new Entry(pos, factionID, now + durationMs);
+		entries.put(pos, entry);
+		expiryQueue.add(entry);
+	}
+
+	public void remove(DimChunkPos pos)
+	{
+		entries.remove(pos);
+		// If the queue is mostly dead entries, rebuild it rather than letting it grow
+		if(expiryQueue.size() > 2 * entries.size() + 64)
+		{
+			expiryQueue.clear();
+			expiryQueue.addAll(entries.values());
+		}
+	}
+
+	public void clear()
+	{
+		entries.clear();
+		expiryQueue.clear();
+	}
+
+	// Removes every entry that has expired by now, returning how many were removed
+	public int expire(long now)
+	{
+		int numExpired = 0;
+		while(!expiryQueue.isEmpty() && expiryQueue.peek().expiresAt <= now)
+		{
+			Entry entry = expiryQueue.poll();
+			// Only remove it if it hasn't since been replaced
+			if(entries.get(entry.pos) == entry)
+			{
+				entries.remove(entry.pos);
+				numExpired++;
+			}
+		}
+		return numExpired;
+	}
+}
@@ -0,0 +1,134 @@
+package com.flansmod.warforge.server;
+
+import java.util.ArrayDeque;
+
+import com.flansmod.warforge.common.WarForgeConfig;
+import com.flansmod.warforge.common.WarForgeMod;
+
+// Spreads siege day and yield day processing over several server ticks.
+// Work is queued as small steps (one claim's yields, one siege's daily advance...) and run in order, each tick
+// only running as many as fit in the configured millisecond budget. A rollover queued while another is still
+// running goes on the end, so steps always run in the order the days were crossed
+public class DayRolloverScheduler
+{
+	public static class Rollover
+	{
+		public final String name;
+		public int numSteps = 0;
+		public int numStepsDone = 0;
+		public int numTicks = 0;
+		public long startMs = 0L;
+		public long durationMs = 0L;
+		public long workNanos = 0L;
+
+		private Rollover(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + ": " + numStepsDone + "/" + numSteps + " steps over " + numTicks + " ticks, "
+				+ durationMs + "ms total, " + (workNanos / 1000000L) + "ms of work";
+		}
+	}
+
+	private static class Step
+	{
+		final Rollover rollover;
+		final Runnable work;
+
+		Step(Rollover rollover, Runnable work)
+		{
+			this.rollover = rollover;
+			this.work = work;
+		}
+	}
+
+	private final ArrayDeque<Step> steps = new ArrayDeque<Step>();
+	private Rollover building = null;
+	private Rollover lastFinished = null;
+
+	public boolean isBusy() { return !steps.isEmpty(); }
+	public int getNumPendingSteps() { return steps.size(); }
+	public Rollover getCurrent() { return steps.isEmpty() ? null : steps.peek().rollover; }
+	public Rollover getLastFinished() { return lastFinished; }
+
+	// Queue up the steps of one rollover between begin and end
+	public void begin(String name)
+	{
+		building = new Rollover(name);
+	}
+
+	public void add(Runnable work)
+	{
+		steps.add(new Step(building, work));
+		building.numSteps++;
+	}
+
+	public void end()
+	{
+		// Always finish with an empty step, so that even an empty rollover gets timed and reported
+		add(() -> {});
+		building = null;
+	}
+
+	public void tick()
+	{
+		if(steps.isEmpty())
+			return;
+
+		long budgetNanos = WarForgeConfig.DAY_ROLLOVER_BUDGET_MS * 1000000L;
+		long tickStart = System.nanoTime();
+		steps.peek().rollover.numTicks++;
+		// Always make some progress, even if a single step blows the budget
+		do
+		{
+			runStep(steps.poll());
+		}
+		while(!steps.isEmpty() && System.nanoTime() - tickStart < budgetNanos);
+	}
+
+	// Runs everything left without a budget. Used before the final save, so that no day is left half processed
+	public void finishAll()
+	{
+		if(steps.isEmpty())
+			return;
+
+		steps.peek().rollover.numTicks++;
+		while(!steps.isEmpty())
+			runStep(steps.poll());
+	}
+
+	private void runStep(Step step)
+	{
+		Rollover rollover = step.rollover;
+		if(rollover.numStepsDone == 0)
+			rollover.startMs = System.currentTimeMillis();
+
+		long start = System.nanoTime();
+		try
+		{
+			step.work.run();
+		}
+		catch(Exception e)
+		{
+			WarForgeMod.LOGGER.error("Step of " + rollover.name + " failed");
+			e.printStackTrace();
+		}
+		rollover.workNanos += System.nanoTime() - start;
+		rollover.numStepsDone++;
+		rollover.durationMs = System.currentTimeMillis() - rollover.startMs;
+
+		if(rollover.numStepsDone == rollover.numSteps)
+		{
+			lastFinished = rollover;
+			WarForgeMod.LOGGER.info("Finished " + rollover);
+
+			// Carry the tick over to the next rollover if it starts in this same tick
+			if(!steps.isEmpty())
+				steps.peek().rollover.numTicks++;
+		}
+	}
+}
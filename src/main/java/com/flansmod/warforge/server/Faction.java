@@ -1,8 +1,9 @@
 package com.flansmod.warforge.server;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 import java.util.function.Predicate;
 
@@ -13,24 +14,23 @@ import com.flansmod.warforge.common.WarForgeMod;
 import com.flansmod.warforge.common.blocks.IClaim;
 import com.flansmod.warforge.common.blocks.TileEntityYieldCollector;
 import com.flansmod.warforge.common.network.FactionDisplayInfo;
-import com.flansmod.warforge.common.network.PlayerDisplayInfo;
-import com.flansmod.warforge.server.Leaderboard.FactionStat;
 import com.mojang.authlib.GameProfile;
 
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.item.EntityItem;
 import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.nbt.NBTTagIntArray;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.tileentity.TileEntity;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 
 public class Faction 
 {
@@ -87,7 +87,14 @@ public class Faction
 	
 	public UUID uuid;
 
-	public int onlinePlayerCount = 0; // the number of current online players
+	// Members that are logged in. Kept up to date on login, logout, respawn, dimension change, join and leave,
+	// as respawning replaces the player entity
+	private final HashMap<UUID, EntityPlayerMP> onlineMembers = new HashMap<UUID, EntityPlayerMP>();
+	
+	// Explosions and pistons move vault blocks without place or break events, so the citadel chunk is recounted after
+	// them. Pistons take a few ticks to finish moving, hence the wait. Ticks until the recount, or -1 for none pending
+	private static final int VAULT_RECOUNT_DELAY_TICKS = 5;
+	private int vaultRecountTicks = -1;
 
 	public long lastSiegeTimestamp = 0;
 
@@ -98,7 +105,7 @@ public class Faction
 
 	public String name;
 	public DimBlockPos citadelPos;
-	public HashMap<DimBlockPos, Integer> claims;
+	public FactionClaims claims;
 	public HashMap<UUID, PlayerData> members;
 	public HashMap<UUID, Float> pendingInvites;
 	public HashMap<UUID, Integer> killCounter;
@@ -113,12 +120,22 @@ public class Faction
 	{
 		members = new HashMap<UUID, PlayerData>();
 		pendingInvites = new HashMap<UUID, Float>();
-		claims = new HashMap<DimBlockPos, Integer>();
+		claims = new FactionClaims();
 		killCounter = new HashMap<UUID, Integer>();
 	}
 	
 	public void Update()
 	{
+		if(vaultRecountTicks >= 0 && vaultRecountTicks-- == 0 && citadelPos != null)
+		{
+			// If the chunk has unloaded since, it will be recounted when it loads
+			World world = WarForgeMod.MC_SERVER.getWorld(citadelPos.dim);
+			DimChunkPos chunkPos = citadelPos.toChunkPos();
+			Chunk chunk = world.getChunkProvider().getLoadedChunk(chunkPos.x, chunkPos.z);
+			if(chunk != null)
+				evaluateVault(chunk);
+		}
+		
 		UUID uuidToRemove = nullUuid;
 		for(HashMap.Entry<UUID, Float> entry : pendingInvites.entrySet())
 		{
@@ -142,17 +159,30 @@ public class Faction
 
 	// array list needed to be able to pre-allocate size, but not know if all players will pass check
 	public ArrayList<EntityPlayer> getOnlinePlayers(Predicate<EntityPlayer> playerCondition) {
-		ArrayList<EntityPlayer> players = new ArrayList<>(members.size());
-		//mMembers.keySet() seems to have a null default
-		for(UUID playerID : members.keySet())
+		ArrayList<EntityPlayer> players = new ArrayList<>(onlineMembers.size());
+		for(EntityPlayerMP player : onlineMembers.values())
 		{
-			EntityPlayer player = getPlayer(playerID);
 			if(playerCondition.test(player)) players.add(player);
 		}
 
 		return players;
 	}
 	
+	public Collection<EntityPlayerMP> getOnlineMembers() { return Collections.unmodifiableCollection(onlineMembers.values()); }
+	public int getOnlinePlayerCount() { return onlineMembers.size(); }
+	
+	// Called whenever a member's player entity appears or is replaced
+	public void onMemberOnline(EntityPlayerMP player)
+	{
+		if(members.containsKey(player.getUniqueID()))
+			onlineMembers.put(player.getUniqueID(), player);
+	}
+	
+	public void onMemberOffline(UUID playerID)
+	{
+		onlineMembers.remove(playerID);
+	}
+	
 	public DimBlockPos getFlagPosition(UUID playerID)
 	{
 		if(members.containsKey(playerID))
@@ -167,6 +197,7 @@ public class Faction
 		if(loggedInToday)
 		{
 			legacy += WarForgeConfig.LEGACY_PER_DAY;
+			WarForgeMod.LEADERBOARD.UpdateFaction(this);
 		}
 		
 //		for(HashMap.Entry<UUID, PlayerData> kvp : mMembers.entrySet())
@@ -178,36 +209,10 @@ public class Faction
 		citadelMoveCooldown--;
 	}
 
+	// Usernames are cached between calls, see FactionInfoSync
 	public FactionDisplayInfo createInfo()
 	{
-		FactionDisplayInfo info = new FactionDisplayInfo();
-		info.factionId = uuid;
-		info.factionName = name;
-		info.notoriety = notoriety;
-		info.wealth = wealth;
-		info.legacy = legacy;
-		
-		info.legacyRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(this, FactionStat.LEGACY);
-		info.notorietyRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(this, FactionStat.NOTORIETY);
-		info.wealthRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(this, FactionStat.WEALTH);
-		info.totalRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(this, FactionStat.TOTAL);
-		
-		info.mNumClaims = claims.size();
-		info.mCitadelPos = citadelPos;
-		
-		for(HashMap.Entry<UUID, PlayerData> entry : members.entrySet())
-		{
-			if(entry.getValue().role == Role.LEADER)
-				info.mLeaderID = entry.getKey();
-			
-			PlayerDisplayInfo playerInfo = new PlayerDisplayInfo();
-			GameProfile	profile = WarForgeMod.MC_SERVER.getPlayerProfileCache().getProfileByUUID(entry.getKey());
-			playerInfo.username = profile == null ? "Unknown Player" : profile.getName();
-			playerInfo.playerUuid = entry.getKey();
-			playerInfo.role = entry.getValue().role;
-			info.members.add(playerInfo);
-		}
-		return info;
+		return WarForgeMod.INFO_SYNC.createInfo(this);
 	}
 	
 	public void InvitePlayer(UUID playerID)
@@ -229,16 +234,19 @@ public class Faction
 	public void addPlayer(UUID playerID)
 	{
 		members.put(playerID, new PlayerData());
+		WarForgeMod.FACTIONS.onPlayerJoinedFaction(playerID, this);
+		WarForgeMod.JOURNAL.recordMemberAdded(this, playerID);
+		WarForgeMod.INFO_SYNC.onMemberChanged(this, playerID);
         pendingInvites.remove(playerID);
 		
+		EntityPlayerMP player = WarForgeMod.MC_SERVER.getPlayerList().getPlayerByUUID(playerID);
+		if(player != null)
+			onMemberOnline(player);
+		
 		// Let everyone know
 		messageAll(new TextComponentString(getPlayerName(playerID) + " joined " + name));
 		
-		placeFlag(WarForgeMod.MC_SERVER.getPlayerList().getPlayerByUUID(playerID), citadelPos);
-
-		// re-check number of online players
-		onlinePlayerCount = getOnlinePlayers(entityPlayer -> true).size();
-
+		placeFlag(player, citadelPos);
 	}
 	
 	// TODO: 
@@ -254,10 +262,18 @@ public class Faction
 		{
 			// Set the target player as leader
 			if(entry.getKey().equals(playerID))
+			{
 				entry.getValue().role = Role.LEADER;
+				WarForgeMod.JOURNAL.recordMemberRole(this, entry.getKey(), Role.LEADER);
+				WarForgeMod.INFO_SYNC.onMemberChanged(this, entry.getKey());
+			}
 			// And set any existing leaders to officers
 			else if(entry.getValue().role == Role.LEADER)
+			{
 				entry.getValue().role = Role.OFFICER;
+				WarForgeMod.JOURNAL.recordMemberRole(this, entry.getKey(), Role.OFFICER);
+				WarForgeMod.INFO_SYNC.onMemberChanged(this, entry.getKey());
+			}
 		}
 		
 
@@ -267,23 +283,32 @@ public class Faction
 	
 	public void removePlayer(UUID playerID)
 	{
-        members.remove(playerID);
+        if(members.remove(playerID) != null)
+		{
+			WarForgeMod.FACTIONS.onPlayerLeftFaction(playerID, this);
+			WarForgeMod.JOURNAL.recordMemberRemoved(this, playerID);
+			WarForgeMod.INFO_SYNC.onMemberChanged(this, playerID);
+		}
+		onlineMembers.remove(playerID);
 	}
 	
 	public void disband()
 	{		
 		// Clean up remaining claims
-		for(Map.Entry<DimBlockPos, Integer> kvp : claims.entrySet())
+		for(DimBlockPos claimPos : claims.getPositions())
 		{
-			World world = WarForgeMod.MC_SERVER.getWorld(kvp.getKey().dim);
-			world.setBlockToAir(kvp.getKey().toRegularPos());
+			World world = WarForgeMod.MC_SERVER.getWorld(claimPos.dim);
+			world.setBlockToAir(claimPos.toRegularPos());
 		}
 		
 		World world = WarForgeMod.MC_SERVER.getWorld(citadelPos.dim);
 		world.setBlockToAir(citadelPos.toRegularPos());
 		
 		messageAll(new TextComponentString(name + " was disbanded."));
+		for(UUID playerID : members.keySet())
+			WarForgeMod.FACTIONS.onPlayerLeftFaction(playerID, this);
 		members.clear();
+		onlineMembers.clear();
 		claims.clear();
 		pendingInvites.clear();
 
@@ -319,6 +344,7 @@ public class Faction
 	public void onClaimPlaced(IClaim claim)
 	{
 		claims.put(claim.getClaimPos(), 0);
+		WarForgeMod.JOURNAL.recordClaimSet(this, claim.getClaimPos(), 0);
 	}
 
 	// for methods where claim block is actually being removed
@@ -350,25 +376,33 @@ public class Faction
 			messageAll(new TextComponentString("Our faction lost a claim at " + claimBlockPos.toFancyString()));
 			
 			claims.remove(claimBlockPos);
+			WarForgeMod.JOURNAL.recordClaimRemoved(this, claimBlockPos);
 		}
 
 	}
 
 	public void claimNoTileEntity(DimChunkPos pos)
 	{
-		claims.put(new DimBlockPos(pos.mDim, pos.getXStart(), 0, pos.getZStart()), 0);
+		DimBlockPos claimPos = new DimBlockPos(pos.mDim, pos.getXStart(), 0, pos.getZStart());
+		claims.put(claimPos, 0);
+		WarForgeMod.JOURNAL.recordClaimSet(this, claimPos, 0);
 	}
 	
 	public boolean placeFlag(EntityPlayer player, DimBlockPos claimPos)
 	{
-		if(!claims.containsKey(claimPos))
+		if(!claims.contains(claimPos))
 		{
 			player.sendMessage(new TextComponentString("Your faction does not own this claim"));
 			return false;
 		}
 		
-		TileEntity te = WarForgeMod.MC_SERVER.getWorld(claimPos.dim).getTileEntity(claimPos.toRegularPos());
-		if(!(te instanceof IClaim))
+		IClaim claim = WarForgeMod.CLAIM_REGISTRY.getLoadedClaim(claimPos);
+		if(claim == null)
+		{
+			TileEntity te = WarForgeMod.MC_SERVER.getWorld(claimPos.dim).getTileEntity(claimPos.toRegularPos());
+			claim = te instanceof IClaim ? (IClaim)te : null;
+		}
+		if(claim == null)
 		{
 			player.sendMessage(new TextComponentString("Internal error"));
 			WarForgeMod.LOGGER.error("Faction claim could not get tile entity");
@@ -398,18 +432,19 @@ public class Faction
 		// Clean up old pos
 		if(!data.flagPosition.equals(DimBlockPos.ZERO))
 		{
-			TileEntity oldTE = WarForgeMod.MC_SERVER.getWorld(data.flagPosition.dim)
-					.getTileEntity(data.flagPosition.toRegularPos());
-			if(oldTE instanceof IClaim)
+			// If it isn't loaded, the old claim works out its flags from the members when it next loads
+			IClaim oldClaim = WarForgeMod.CLAIM_REGISTRY.getLoadedClaim(data.flagPosition);
+			if(oldClaim != null)
 			{
-				((IClaim)oldTE).onServerRemovePlayerFlag(player.getName());
+				oldClaim.onServerRemovePlayerFlag(player.getName());
 			}
 		}
 		
 		data.flagPosition = claimPos;
 		//data.mHasMovedFlagToday = true;
 		data.addCooldown();
-		((IClaim)te).onServerSetPlayerFlag(player.getName());
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
+		claim.onServerSetPlayerFlag(player.getName());
 		messageAll(new TextComponentString(player.getName() + " placed their flag at " + claimPos.toFancyString()));
 		player.sendMessage(new TextComponentString("Your flag can move again on the next siege day"));
 		
@@ -419,66 +454,100 @@ public class Faction
 	// Messaging
 	public void messageAll(ITextComponent chat)
 	{
-		for(UUID playerID : members.keySet())
+		for(EntityPlayerMP player : onlineMembers.values())
 		{
-			final EntityPlayer player = getPlayer(playerID);
             player.sendMessage(chat);
 		}
 	}
 	
 	public DimBlockPos getSpecificPosForClaim(DimChunkPos pos)
 	{
-		for(DimBlockPos claimPos : claims.keySet())
-		{
-			if(claimPos.toChunkPos().equals(pos))
-				return claimPos;
-		}
-		return null;
+		return claims.getClaimPos(pos);
 	}
 	
 	public void evaluateVault()
 	{
 		World world = WarForgeMod.MC_SERVER.getWorld(citadelPos.dim);
 		DimChunkPos chunkPos = citadelPos.toChunkPos();
-		
-		int count = 0;
-        for (int x = 0; x < 16; x++) {
-            for (int z = 0; z < 16; z++) {
-                for (int y = 0; y < 256; y++) {
-                    BlockPos blockPos = chunkPos.getBlock(x, y, z);
-                    IBlockState state = world.getBlockState(blockPos);
-                    if (WarForgeConfig.VAULT_BLOCKS.contains(state.getBlock()))
-                        count++;
-                }
-            }
-        }
-
-        wealth = count;
+		evaluateVault(world.getChunk(chunkPos.x, chunkPos.z));
 	}
-
-	public void awardYields()
+	
+	// Full recount of the citadel chunk. Only needed when it loads, the citadel moves or blocks were moved in bulk,
+	// single vault blocks being placed or broken are applied with onVaultBlockChanged
+	public void evaluateVault(Chunk chunk)
 	{
-		// 
-		for(HashMap.Entry<DimBlockPos, Integer> kvp : claims.entrySet())
+		int count = 0;
+		for(ExtendedBlockStorage storage : chunk.getBlockStorageArray())
 		{
-			DimBlockPos pos = kvp.getKey();
-			World world = WarForgeMod.MC_SERVER.getWorld(pos.dim);
+			if(storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty())
+				continue;
 			
-			// If It's loaded, process immediately
-			if(world.isBlockLoaded(pos))
+			for(int y = 0; y < 16; y++)
 			{
-				TileEntity te = world.getTileEntity(pos.toRegularPos());
-				if(te instanceof TileEntityYieldCollector)
+				for(int z = 0; z < 16; z++)
 				{
-					((TileEntityYieldCollector)te).processYield(1);
+					for(int x = 0; x < 16; x++)
+					{
+						if(WarForgeConfig.VAULT_BLOCKS.contains(storage.get(x, y, z).getBlock()))
+							count++;
+					}
 				}
 			}
-			// Otherwise, cache the number of times it needs to process when it next loads
-			else
+		}
+		
+		setWealth(count);
+	}
+	
+	public void markVaultForRecount()
+	{
+		vaultRecountTicks = VAULT_RECOUNT_DELAY_TICKS;
+	}
+	
+	public void onVaultBlockChanged(int delta)
+	{
+		setWealth(Math.max(0, wealth + delta));
+	}
+	
+	private void setWealth(int newWealth)
+	{
+		if(wealth != newWealth)
+		{
+			wealth = newWealth;
+			WarForgeMod.LEADERBOARD.UpdateFaction(this);
+			WarForgeMod.JOURNAL.recordStats(this);
+		}
+	}
+
+	public void awardYields()
+	{
+		for(DimBlockPos pos : claims.getPositions())
+		{
+			awardYield(pos);
+		}
+	}
+	
+	public void awardYield(DimBlockPos pos)
+	{
+		int index = claims.indexOf(pos);
+		if(index < 0)
+			return;
+		
+		World world = WarForgeMod.MC_SERVER.getWorld(pos.dim);
+		
+		// If It's loaded, process immediately
+		if(world.isBlockLoaded(pos))
+		{
+			TileEntity te = world.getTileEntity(pos.toRegularPos());
+			if(te instanceof TileEntityYieldCollector)
 			{
-				kvp.setValue(kvp.getValue() + 1);
+				((TileEntityYieldCollector)te).processYield(1);
 			}
 		}
+		// Otherwise, cache the number of times it needs to process when it next loads
+		else
+		{
+			claims.setPendingYields(index, claims.getPendingYields(index) + 1);
+		}
 	}
 	
 	public void promote(UUID playerID)
@@ -489,6 +558,8 @@ public class Faction
 			if(data.role == Role.MEMBER)
 			{
 				data.role = Role.OFFICER;
+				WarForgeMod.JOURNAL.recordMemberRole(this, playerID, Role.OFFICER);
+				WarForgeMod.INFO_SYNC.onMemberChanged(this, playerID);
 				GameProfile profile = WarForgeMod.MC_SERVER.getPlayerProfileCache().getProfileByUUID(playerID);
 				if(profile != null)
 					messageAll(new TextComponentString(profile.getName() + " was promoted to officer"));
@@ -504,6 +575,8 @@ public class Faction
 			if(data.role == Role.OFFICER)
 			{
 				data.role = Role.MEMBER;
+				WarForgeMod.JOURNAL.recordMemberRole(this, playerID, Role.MEMBER);
+				WarForgeMod.INFO_SYNC.onMemberChanged(this, playerID);
 				GameProfile profile = WarForgeMod.MC_SERVER.getPlayerProfileCache().getProfileByUUID(playerID);
 				if(profile != null)
 					messageAll(new TextComponentString(profile.getName() + " was demoted to member"));
@@ -542,14 +615,8 @@ public class Faction
 		citadelPos = DimBlockPos.readFromNBT(tags, "citadelPos");
 		
 		
-		NBTTagList claimList = tags.getTagList("claims", 10); // CompoundTag (see NBTBase.class)
-        for (NBTBase base : claimList) {
-            NBTTagCompound claimInfo = (NBTTagCompound) base;
-            DimBlockPos pos = DimBlockPos.readFromNBT((NBTTagIntArray) claimInfo.getTag("pos"));
-            int pendingYields = claimInfo.getInteger("pendingYields");
-            claims.put(pos, pendingYields);
-        }
-        if(!claims.containsKey(citadelPos))
+		claims.readFromNBT(tags, "claims");
+        if(!claims.contains(citadelPos))
 		{
 			WarForgeMod.LOGGER.error("Citadel was not claimed by the faction. Forcing claim");
 			claims.put(citadelPos, 0);
@@ -596,16 +663,7 @@ public class Faction
 		tags.setInteger("colour", colour);
 		
 		// Set claims
-		NBTTagList claimsList = new NBTTagList();
-		for(HashMap.Entry<DimBlockPos, Integer> kvp : claims.entrySet())
-		{
-			NBTTagCompound claimTags = new NBTTagCompound();
-			claimTags.setTag("pos", kvp.getKey().writeToNBT());
-			claimTags.setInteger("pendingYields", kvp.getValue());
-			
-			claimsList.appendTag(claimTags);
-		}
-		tags.setTag("claims", claimsList);
+		claims.writeToNBT(tags, "claims");
 		citadelPos.writeToNBT(tags, "citadelPos");
 		
 		NBTTagList killsList = new NBTTagList();
@@ -641,8 +699,8 @@ public class Faction
 	// checks all stored claim locations to check if they are siege blocks
 	public int calcNumSieges() {
 		int result = 0;
-		for (DimBlockPos claimPos : claims.keySet())
-			if (WarForgeMod.FACTIONS.getSieges().get(claimPos) != null) ++result;
+		for (int i = 0; i < claims.size(); i++)
+			if (WarForgeMod.FACTIONS.getSieges().get(claims.getPos(i)) != null) ++result;
 		return result;
 	}
 	
@@ -0,0 +1,279 @@
+package com.flansmod.warforge.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.flansmod.warforge.common.DimBlockPos;
+import com.flansmod.warforge.common.DimChunkPos;
+import com.flansmod.warforge.common.WarForgeMod;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagList;
+
+// One faction's claims, keyed by chunk as a faction only ever has one claim block per chunk.
+// Each claim's block position and pending yields live in parallel arrays, packed so that they can be iterated by index
+// (for(int i = 0; i < size(); i++)) without boxing. Chunks are found through an open addressing table of indices into them
+public class FactionClaims
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int size = 0;
+	private long[] chunkKeys = new long[INITIAL_CAPACITY];
+	private int[] dims = new int[INITIAL_CAPACITY];
+	private int[] xs = new int[INITIAL_CAPACITY];
+	private int[] ys = new int[INITIAL_CAPACITY];
+	private int[] zs = new int[INITIAL_CAPACITY];
+	private int[] pendingYields = new int[INITIAL_CAPACITY];
+
+	// Index + 1 of the claim in each slot, 0 for empty. Kept at most half full, linear probing, backward shift deletion
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+
+	public int size() { return size; }
+	public boolean isEmpty() { return size == 0; }
+
+	public int getDim(int index) { return dims[index]; }
+	public int getX(int index) { return xs[index]; }
+	public int getY(int index) { return ys[index]; }
+	public int getZ(int index) { return zs[index]; }
+	public int getPendingYields(int index) { return pendingYields[index]; }
+	public void setPendingYields(int index, int count) { pendingYields[index] = count; }
+	public DimBlockPos getPos(int index) { return new DimBlockPos(dims[index], xs[index], ys[index], zs[index]); }
+
+	// Index of the claim in this chunk, or -1
+	public int indexOf(int dim, int chunkX, int chunkZ)
+	{
+		int slot = find(ClaimIndex.pack(dim, chunkX, chunkZ), dim, chunkX, chunkZ);
+		return table[slot] - 1;
+	}
+
+	public int indexOf(DimChunkPos pos)
+	{
+		return indexOf(pos.mDim, pos.x, pos.z);
+	}
+
+	// Index of the claim with its block exactly here, or -1
+	public int indexOf(DimBlockPos pos)
+	{
+		int index = indexOf(pos.dim, pos.getX() >> 4, pos.getZ() >> 4);
+		return index >= 0 && ys[index] == pos.getY() && xs[index] == pos.getX() && zs[index] == pos.getZ() ? index : -1;
+	}
+
+	public boolean contains(DimBlockPos pos)
+	{
+		return indexOf(pos) >= 0;
+	}
+
+	public boolean containsChunk(DimChunkPos pos)
+	{
+		return indexOf(pos) >= 0;
+	}
+
+	// Returns null if there is no claim in this chunk
+	public DimBlockPos getClaimPos(DimChunkPos pos)
+	{
+		int index = indexOf(pos);
+		return index >= 0 ? getPos(index) : null;
+	}
+
+	// A copy, for when the claims may change while going through them
+	public List<DimBlockPos> getPositions()
+	{
+		ArrayList<DimBlockPos> positions = new ArrayList<DimBlockPos>(size);
+		for(int i = 0; i < size; i++)
+			positions.add(getPos(i));
+		return positions;
+	}
+
+	// Replaces any other claim in the same chunk
+	public void put(DimBlockPos pos, int pending)
+	{
+		put(pos.dim, pos.getX(), pos.getY(), pos.getZ(), pending);
+	}
+
+	public void put(int dim, int x, int y, int z, int pending)
+	{
+		int chunkX = x >> 4;
+		int chunkZ = z >> 4;
+		long key = ClaimIndex.pack(dim, chunkX, chunkZ);
+		int slot = find(key, dim, chunkX, chunkZ);
+		int index = table[slot] - 1;
+		if(index < 0)
+		{
+			if(size == chunkKeys.length)
+			{
+				grow(size * 2);
+				slot = find(key, dim, chunkX, chunkZ);
+			}
+			index = size++;
+			table[slot] = index + 1;
+			chunkKeys[index] = key;
+		}
+		dims[index] = dim;
+		xs[index] = x;
+		ys[index] = y;
+		zs[index] = z;
+		pendingYields[index] = pending;
+	}
+
+	// Only removes the claim if its block is exactly here. Returns whether there was one
+	public boolean remove(DimBlockPos pos)
+	{
+		int index = indexOf(pos);
+		if(index < 0)
+			return false;
+		removeAt(index);
+		return true;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(table, 0);
+		size = 0;
+	}
+
+	// Fills the gap with the last claim, so indices past the removed one are not stable across removals
+	private void removeAt(int index)
+	{
+		shiftBack(findIndex(index));
+
+		int last = --size;
+		if(index != last)
+		{
+			table[findIndex(last)] = index + 1;
+			chunkKeys[index] = chunkKeys[last];
+			dims[index] = dims[last];
+			xs[index] = xs[last];
+			ys[index] = ys[last];
+			zs[index] = zs[last];
+			pendingYields[index] = pendingYields[last];
+		}
+	}
+
+	// Finds the slot holding this chunk, or the empty slot where it would go.
+	// Packed keys only keep 22 bits per chunk coordinate, so the real position is checked too
+	private int find(long key, int dim, int chunkX, int chunkZ)
+	{
+		int mask = table.length - 1;
+		for(int slot = mix(key) & mask; ; slot = (slot + 1) & mask)
+		{
+			int index = table[slot] - 1;
+			if(index < 0)
+				return slot;
+			if(chunkKeys[index] == key && dims[index] == dim && (xs[index] >> 4) == chunkX && (zs[index] >> 4) == chunkZ)
+				return slot;
+		}
+	}
+
+	// The slot pointing at this claim
+	private int findIndex(int index)
+	{
+		int mask = table.length - 1;
+		int slot = mix(chunkKeys[index]) & mask;
+		while(table[slot] != index + 1)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	// Closes the gap left at a removed slot by pulling back any entry that probed past it
+	private void shiftBack(int gap)
+	{
+		int mask = table.length - 1;
+		int slot = gap;
+		while(true)
+		{
+			slot = (slot + 1) & mask;
+			if(table[slot] == 0)
+				break;
+
+			int home = mix(chunkKeys[table[slot] - 1]) & mask;
+			// Only move the entry if its home slot is not between the gap and its current slot
+			if(((slot - home) & mask) >= ((slot - gap) & mask))
+			{
+				table[gap] = table[slot];
+				gap = slot;
+			}
+		}
+		table[gap] = 0;
+	}
+
+	private void grow(int capacity)
+	{
+		chunkKeys = Arrays.copyOf(chunkKeys, capacity);
+		dims = Arrays.copyOf(dims, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		zs = Arrays.copyOf(zs, capacity);
+		pendingYields = Arrays.copyOf(pendingYields, capacity);
+
+		table = new int[capacity * 2];
+		int mask = table.length - 1;
+		for(int i = 0; i < size; i++)
+		{
+			int slot = mix(chunkKeys[i]) & mask;
+			while(table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = i + 1;
+		}
+	}
+
+	private static int mix(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	// Saved as one int array per column rather than a compound per claim
+	public void writeToNBT(NBTTagCompound tags, String key)
+	{
+		NBTTagCompound claimTags = new NBTTagCompound();
+		claimTags.setIntArray("dim", Arrays.copyOf(dims, size));
+		claimTags.setIntArray("x", Arrays.copyOf(xs, size));
+		claimTags.setIntArray("y", Arrays.copyOf(ys, size));
+		claimTags.setIntArray("z", Arrays.copyOf(zs, size));
+		claimTags.setIntArray("pendingYields", Arrays.copyOf(pendingYields, size));
+		tags.setTag(key, claimTags);
+	}
+
+	public void readFromNBT(NBTTagCompound tags, String key)
+	{
+		clear();
+
+		// Older saves have a list of compounds, one per claim
+		if(tags.hasKey(key, 9)) // List
+		{
+			readLegacyNBT(tags.getTagList(key, 10)); // CompoundTag
+			return;
+		}
+
+		NBTTagCompound claimTags = tags.getCompoundTag(key);
+		int[] readDims = claimTags.getIntArray("dim");
+		int[] readXs = claimTags.getIntArray("x");
+		int[] readYs = claimTags.getIntArray("y");
+		int[] readZs = claimTags.getIntArray("z");
+		int[] readYields = claimTags.getIntArray("pendingYields");
+		int count = readDims.length;
+		if(readXs.length != count || readYs.length != count || readZs.length != count || readYields.length != count)
+		{
+			WarForgeMod.LOGGER.error("Faction claim data had mismatched lengths, reading what we can");
+			count = Math.min(count, Math.min(Math.min(readXs.length, readYs.length), Math.min(readZs.length, readYields.length)));
+		}
+
+		if(count > chunkKeys.length)
+			grow(Integer.highestOneBit(count - 1) << 1);
+		for(int i = 0; i < count; i++)
+			put(readDims[i], readXs[i], readYs[i], readZs[i], readYields[i]);
+	}
+
+	private void readLegacyNBT(NBTTagList claimList)
+	{
+		for(NBTBase base : claimList)
+		{
+			NBTTagCompound claimInfo = (NBTTagCompound) base;
+			DimBlockPos pos = DimBlockPos.readFromNBT((NBTTagIntArray) claimInfo.getTag("pos"));
+			put(pos, claimInfo.getInteger("pendingYields"));
+		}
+	}
+}
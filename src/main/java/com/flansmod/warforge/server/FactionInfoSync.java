@@ -0,0 +1,266 @@
+package com.flansmod.warforge.server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.UUID;
+
+import com.flansmod.warforge.common.WarForgeMod;
+import com.flansmod.warforge.common.network.FactionDisplayInfo;
+import com.flansmod.warforge.common.network.PacketFactionInfo;
+import com.flansmod.warforge.common.network.PlayerDisplayInfo;
+import com.flansmod.warforge.server.Faction.PlayerData;
+import com.flansmod.warforge.server.Faction.Role;
+import com.flansmod.warforge.server.Leaderboard.FactionStat;
+import com.mojang.authlib.GameProfile;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+
+// Keeps a versioned copy of each faction's display info, and remembers which version each player was last sent.
+// A player asking again gets "unchanged", or just the fields and members that changed since their version,
+// and only gets the whole thing if they have never seen it or their version is too old for the recent change history.
+// Scalar fields are compared against the cached copy when info is requested. Member changes are reported by Faction,
+// so that usernames are only looked up in the profile cache for members that actually changed
+public class FactionInfoSync
+{
+	public static final int FIELD_NAME = 1;
+	public static final int FIELD_STATS = 1 << 1;
+	public static final int FIELD_CLAIMS = 1 << 2;
+	public static final int FIELD_CITADEL = 1 << 3;
+	public static final int FIELD_LEADER = 1 << 4;
+	public static final int FIELD_MEMBERS = 1 << 5;
+
+	private static final int MAX_CHANGES_PER_FACTION = 32;
+
+	private static class Change
+	{
+		final long version;
+		final int fields;
+		final UUID[] members;
+
+		Change(long version, int fields, UUID[] members)
+		{
+			this.version = version;
+			this.fields = fields;
+			this.members = members;
+		}
+	}
+
+	private static class Entry
+	{
+		final Faction faction;
+		long version;
+		// The oldest version we can still build a delta from
+		long oldestDeltaBase;
+		// Ranks are left at 0, they are filled in per request as they move when other factions change
+		FactionDisplayInfo info;
+		HashMap<UUID, PlayerDisplayInfo> memberInfos = new HashMap<UUID, PlayerDisplayInfo>();
+		final HashSet<UUID> dirtyMembers = new HashSet<UUID>();
+		final ArrayDeque<Change> changes = new ArrayDeque<Change>();
+
+		Entry(Faction faction)
+		{
+			this.faction = faction;
+		}
+	}
+
+	private final HashMap<UUID, Entry> entries = new HashMap<UUID, Entry>();
+	// Player ID -> faction ID -> the version that player was last sent
+	private final HashMap<UUID, HashMap<UUID, Long>> knownVersions = new HashMap<UUID, HashMap<UUID, Long>>();
+	// Versions are unique across all factions and start from the clock, so they never repeat across restarts either
+	private long lastVersion = System.currentTimeMillis() * 1000L;
+
+	public void onMemberChanged(Faction faction, UUID playerID)
+	{
+		Entry entry = entries.get(faction.uuid);
+		if(entry != null && entry.faction == faction)
+			entry.dirtyMembers.add(playerID);
+	}
+
+	public void onFactionRemoved(UUID factionID)
+	{
+		entries.remove(factionID);
+		for(HashMap<UUID, Long> known : knownVersions.values())
+			known.remove(factionID);
+	}
+
+	public void onPlayerLoggedOut(UUID playerID)
+	{
+		knownVersions.remove(playerID);
+	}
+
+	// The player's client lost track of this faction, so send everything next time
+	public void forget(EntityPlayerMP player, Faction faction)
+	{
+		HashMap<UUID, Long> known = knownVersions.get(player.getUniqueID());
+		if(known != null)
+			known.remove(faction.uuid);
+	}
+
+	public void clear()
+	{
+		entries.clear();
+		knownVersions.clear();
+	}
+
+	// A fresh copy of the current info, with current ranks
+	public FactionDisplayInfo createInfo(Faction faction)
+	{
+		return copyWithRanks(refresh(faction), faction);
+	}
+
+	public PacketFactionInfo createPacket(Faction faction, EntityPlayerMP player)
+	{
+		Entry entry = refresh(faction);
+		HashMap<UUID, Long> known = knownVersions.computeIfAbsent(player.getUniqueID(), (id) -> new HashMap<UUID, Long>());
+		Long knownVersion = known.put(faction.uuid, entry.version);
+
+		PacketFactionInfo packet = new PacketFactionInfo();
+		packet.info = copyWithRanks(entry, faction);
+		if(knownVersion == null || knownVersion < entry.oldestDeltaBase || knownVersion > entry.version)
+		{
+			packet.mode = PacketFactionInfo.MODE_FULL;
+		}
+		else if(knownVersion == entry.version)
+		{
+			packet.mode = PacketFactionInfo.MODE_UNCHANGED;
+		}
+		else
+		{
+			packet.mode = PacketFactionInfo.MODE_DELTA;
+			packet.baseVersion = knownVersion;
+
+			HashSet<UUID> changedMembers = new HashSet<UUID>();
+			for(Change change : entry.changes)
+			{
+				if(change.version <= knownVersion)
+					continue;
+				packet.changedFields |= change.fields;
+				for(UUID memberID : change.members)
+					changedMembers.add(memberID);
+			}
+
+			for(UUID memberID : changedMembers)
+			{
+				PlayerDisplayInfo memberInfo = entry.memberInfos.get(memberID);
+				if(memberInfo != null)
+					packet.updatedMembers.add(memberInfo);
+				else
+					packet.removedMembers.add(memberID);
+			}
+		}
+		return packet;
+	}
+
+	private Entry refresh(Faction faction)
+	{
+		Entry entry = entries.get(faction.uuid);
+		if(entry == null || entry.faction != faction)
+		{
+			entry = new Entry(faction);
+			entry.version = ++lastVersion;
+			entry.oldestDeltaBase = entry.version;
+			entry.info = build(entry, faction, null);
+			entries.put(faction.uuid, entry);
+			return entry;
+		}
+
+		FactionDisplayInfo old = entry.info;
+		int fields = 0;
+		if(!faction.name.equals(old.factionName))
+			fields |= FIELD_NAME;
+		if(faction.notoriety != old.notoriety || faction.wealth != old.wealth || faction.legacy != old.legacy)
+			fields |= FIELD_STATS;
+		if(faction.claims.size() != old.mNumClaims)
+			fields |= FIELD_CLAIMS;
+		if(!faction.citadelPos.equals(old.mCitadelPos))
+			fields |= FIELD_CITADEL;
+		// Catch members changed without going through Faction, such as journal replay, by the count not matching
+		if(!entry.dirtyMembers.isEmpty() || faction.members.size() != old.members.size())
+			fields |= FIELD_MEMBERS;
+
+		if(fields == 0)
+			return entry;
+
+		UUID[] changedMembers = new UUID[0];
+		if((fields & FIELD_MEMBERS) != 0)
+		{
+			HashSet<UUID> changed = new HashSet<UUID>(entry.dirtyMembers);
+			for(UUID memberID : faction.members.keySet())
+				if(!entry.memberInfos.containsKey(memberID))
+					changed.add(memberID);
+			for(UUID memberID : entry.memberInfos.keySet())
+				if(!faction.members.containsKey(memberID))
+					changed.add(memberID);
+			changedMembers = changed.toArray(changedMembers);
+		}
+
+		entry.info = build(entry, faction, entry.dirtyMembers);
+		entry.dirtyMembers.clear();
+		if(!entry.info.mLeaderID.equals(old.mLeaderID))
+			fields |= FIELD_LEADER;
+
+		entry.version = ++lastVersion;
+		entry.changes.add(new Change(entry.version, fields, changedMembers));
+		if(entry.changes.size() > MAX_CHANGES_PER_FACTION)
+			entry.oldestDeltaBase = entry.changes.poll().version;
+		return entry;
+	}
+
+	// Builds new info, reusing the previous member infos unless they are marked as changed. Pass null to rebuild them all
+	private FactionDisplayInfo build(Entry entry, Faction faction, HashSet<UUID> dirtyMembers)
+	{
+		FactionDisplayInfo info = new FactionDisplayInfo();
+		info.factionId = faction.uuid;
+		info.factionName = faction.name;
+		info.notoriety = faction.notoriety;
+		info.wealth = faction.wealth;
+		info.legacy = faction.legacy;
+		info.mNumClaims = faction.claims.size();
+		info.mCitadelPos = faction.citadelPos;
+
+		HashMap<UUID, PlayerDisplayInfo> memberInfos = new HashMap<UUID, PlayerDisplayInfo>();
+		for(HashMap.Entry<UUID, PlayerData> kvp : faction.members.entrySet())
+		{
+			if(kvp.getValue().role == Role.LEADER)
+				info.mLeaderID = kvp.getKey();
+
+			PlayerDisplayInfo playerInfo = dirtyMembers == null ? null : entry.memberInfos.get(kvp.getKey());
+			if(playerInfo == null || dirtyMembers.contains(kvp.getKey()) || playerInfo.role != kvp.getValue().role)
+			{
+				playerInfo = new PlayerDisplayInfo();
+				GameProfile profile = WarForgeMod.MC_SERVER.getPlayerProfileCache().getProfileByUUID(kvp.getKey());
+				playerInfo.username = profile == null ? "Unknown Player" : profile.getName();
+				playerInfo.playerUuid = kvp.getKey();
+				playerInfo.role = kvp.getValue().role;
+			}
+			info.members.add(playerInfo);
+			memberInfos.put(kvp.getKey(), playerInfo);
+		}
+		entry.memberInfos = memberInfos;
+		return info;
+	}
+
+	// Member lists are never modified once built, so they can be shared between copies
+	private static FactionDisplayInfo copyWithRanks(Entry entry, Faction faction)
+	{
+		FactionDisplayInfo cached = entry.info;
+		FactionDisplayInfo info = new FactionDisplayInfo();
+		info.factionId = cached.factionId;
+		info.factionName = cached.factionName;
+		info.mLeaderID = cached.mLeaderID;
+		info.members = cached.members;
+		info.notoriety = cached.notoriety;
+		info.wealth = cached.wealth;
+		info.legacy = cached.legacy;
+		info.mNumClaims = cached.mNumClaims;
+		info.mCitadelPos = cached.mCitadelPos;
+		info.version = entry.version;
+
+		info.legacyRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(faction, FactionStat.LEGACY);
+		info.notorietyRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(faction, FactionStat.NOTORIETY);
+		info.wealthRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(faction, FactionStat.WEALTH);
+		info.totalRank = WarForgeMod.LEADERBOARD.GetOneIndexedRankOf(faction, FactionStat.TOTAL);
+		return info;
+	}
+}
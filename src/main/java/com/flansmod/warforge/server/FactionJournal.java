@@ -0,0 +1,360 @@
+package com.flansmod.warforge.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.UUID;
+
+import com.flansmod.warforge.common.DimBlockPos;
+import com.flansmod.warforge.common.DimChunkPos;
+import com.flansmod.warforge.common.WarForgeConfig;
+import com.flansmod.warforge.common.WarForgeMod;
+
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+
+// Write-ahead journal of the faction changes that happen often enough to make full saves expensive.
+// Each record is appended to warforgefactions.journal.<epoch> as it happens, and on autosave the journal is just flushed.
+// Every so often (or when something changes that the journal can't describe) a full snapshot is written instead,
+// which starts a new epoch. On startup, every journal from the snapshot's epoch onwards is replayed on top of it
+public class FactionJournal
+{
+	public static final byte OP_CLAIM_SET = 0;
+	public static final byte OP_CLAIM_REMOVE = 1;
+	public static final byte OP_MEMBER_ADD = 2;
+	public static final byte OP_MEMBER_REMOVE = 3;
+	public static final byte OP_MEMBER_ROLE = 4;
+	public static final byte OP_SIEGE_PROGRESS = 5;
+	public static final byte OP_STATS = 6;
+	public static final byte OP_KILLS = 7;
+
+	private static final String FILE_PREFIX = "warforgefactions.journal.";
+
+	private File directory = null;
+	private long epoch = 0L;
+	private FileOutputStream fileStream = null;
+	private DataOutputStream out = null;
+
+	private int numRecords = 0;
+	private int numSavesSinceSnapshot = 0;
+	private boolean needsSnapshot = true;
+	private boolean replaying = false;
+
+	public int getNumRecords() { return numRecords; }
+
+	// Something changed that isn't journaled, so the next save has to be a full snapshot.
+	// Nothing more is journaled until then: later records would be replayed on top of the older snapshot, without the
+	// change they came after, if we crashed before the new snapshot was written. Call this before making the change
+	public void markNeedsSnapshot()
+	{
+		needsSnapshot = true;
+		close();
+	}
+
+	public boolean wantsSnapshot()
+	{
+		return out == null
+			|| needsSnapshot
+			|| numRecords >= WarForgeConfig.JOURNAL_MAX_RECORDS
+			|| numSavesSinceSnapshot >= WarForgeConfig.JOURNAL_SAVES_PER_SNAPSHOT;
+	}
+
+	// Replays all journals for this snapshot on top of the freshly loaded faction data, then starts a new journal
+	public int open(File directory, long snapshotEpoch, FactionStorage storage)
+	{
+		close();
+		this.directory = directory;
+
+		long highestEpoch = snapshotEpoch;
+		int numReplayed = 0;
+		replaying = true;
+		try
+		{
+			for(long journalEpoch : listEpochs(directory))
+			{
+				File file = getFile(directory, journalEpoch);
+				if(journalEpoch < snapshotEpoch)
+				{
+					// Already folded into the snapshot, just didn't get cleaned up
+					file.delete();
+					continue;
+				}
+
+				numReplayed += replay(file, storage);
+				highestEpoch = Math.max(highestEpoch, journalEpoch);
+			}
+		}
+		finally
+		{
+			replaying = false;
+		}
+
+		// Never append after a possibly torn record, always start a fresh file
+		epoch = highestEpoch;
+		if(WarForgeConfig.ENABLE_SAVE_JOURNAL)
+			startEpoch(epoch + 1);
+
+		needsSnapshot = numReplayed > 0;
+		if(numReplayed > 0)
+			WarForgeMod.LOGGER.info("Replayed " + numReplayed + " faction journal records");
+		return numReplayed;
+	}
+
+	// Called on the server thread just as a snapshot is taken. Returns the epoch that the snapshot should be tagged with
+	public long beginSnapshot(File directory)
+	{
+		this.directory = directory;
+		close();
+		epoch++;
+		if(WarForgeConfig.ENABLE_SAVE_JOURNAL)
+			startEpoch(epoch);
+
+		numRecords = 0;
+		numSavesSinceSnapshot = 0;
+		needsSnapshot = false;
+		return epoch;
+	}
+
+	// Called from the save thread once a snapshot has been written. Only touches files we are no longer writing to
+	public void deleteBefore(File directory, long snapshotEpoch)
+	{
+		for(long journalEpoch : listEpochs(directory))
+		{
+			if(journalEpoch < snapshotEpoch)
+				getFile(directory, journalEpoch).delete();
+		}
+	}
+
+	// Called on autosaves that don't need a full snapshot
+	public void flush()
+	{
+		if(out == null)
+			return;
+
+		try
+		{
+			out.flush();
+			fileStream.getFD().sync();
+			numSavesSinceSnapshot++;
+		}
+		catch(IOException e)
+		{
+			WarForgeMod.LOGGER.error("Failed to flush faction journal, falling back to full saves");
+			e.printStackTrace();
+			close();
+		}
+	}
+
+	public void close()
+	{
+		if(out == null)
+			return;
+
+		try
+		{
+			out.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+		out = null;
+		fileStream = null;
+	}
+
+	public void recordClaimSet(Faction faction, DimBlockPos pos, int pendingYields)
+	{
+		NBTTagCompound tags = createRecord(OP_CLAIM_SET, faction);
+		if(tags == null)
+			return;
+		pos.writeToNBT(tags, "pos");
+		tags.setInteger("pendingYields", pendingYields);
+		append(tags);
+	}
+
+	public void recordClaimRemoved(Faction faction, DimBlockPos pos)
+	{
+		NBTTagCompound tags = createRecord(OP_CLAIM_REMOVE, faction);
+		if(tags == null)
+			return;
+		pos.writeToNBT(tags, "pos");
+		append(tags);
+	}
+
+	public void recordMemberAdded(Faction faction, UUID playerID)
+	{
+		NBTTagCompound tags = createRecord(OP_MEMBER_ADD, faction);
+		if(tags == null)
+			return;
+		tags.setUniqueId("player", playerID);
+		append(tags);
+	}
+
+	public void recordMemberRemoved(Faction faction, UUID playerID)
+	{
+		NBTTagCompound tags = createRecord(OP_MEMBER_REMOVE, faction);
+		if(tags == null)
+			return;
+		tags.setUniqueId("player", playerID);
+		append(tags);
+	}
+
+	public void recordMemberRole(Faction faction, UUID playerID, Faction.Role role)
+	{
+		NBTTagCompound tags = createRecord(OP_MEMBER_ROLE, faction);
+		if(tags == null)
+			return;
+		tags.setUniqueId("player", playerID);
+		tags.setString("role", role.name());
+		append(tags);
+	}
+
+	public void recordSiegeProgress(DimChunkPos siegePos, int progress)
+	{
+		NBTTagCompound tags = createRecord(OP_SIEGE_PROGRESS, null);
+		if(tags == null)
+			return;
+		tags.setInteger("dim", siegePos.mDim);
+		tags.setInteger("x", siegePos.x);
+		tags.setInteger("z", siegePos.z);
+		tags.setInteger("progress", progress);
+		append(tags);
+	}
+
+	// Stats are journaled as absolute values, so replaying a record twice is harmless
+	public void recordStats(Faction faction)
+	{
+		NBTTagCompound tags = createRecord(OP_STATS, faction);
+		if(tags == null)
+			return;
+		tags.setInteger("notoriety", faction.notoriety);
+		tags.setInteger("wealth", faction.wealth);
+		tags.setInteger("legacy", faction.legacy);
+		append(tags);
+	}
+
+	public void recordKills(Faction faction, UUID victimID, int count)
+	{
+		NBTTagCompound tags = createRecord(OP_KILLS, faction);
+		if(tags == null)
+			return;
+		tags.setUniqueId("player", victimID);
+		tags.setInteger("count", count);
+		append(tags);
+	}
+
+	private NBTTagCompound createRecord(byte op, Faction faction)
+	{
+		if(out == null || replaying)
+			return null;
+
+		NBTTagCompound tags = new NBTTagCompound();
+		tags.setByte("op", op);
+		if(faction != null)
+			tags.setUniqueId("faction", faction.uuid);
+		return tags;
+	}
+
+	private void append(NBTTagCompound tags)
+	{
+		try
+		{
+			CompressedStreamTools.write(tags, out);
+			numRecords++;
+		}
+		catch(IOException e)
+		{
+			WarForgeMod.LOGGER.error("Failed to write to faction journal, falling back to full saves");
+			e.printStackTrace();
+			close();
+			needsSnapshot = true;
+		}
+	}
+
+	private int replay(File file, FactionStorage storage)
+	{
+		int numReplayed = 0;
+		try(DataInputStream in = new DataInputStream(new FileInputStream(file)))
+		{
+			while(true)
+			{
+				NBTTagCompound tags;
+				try
+				{
+					tags = CompressedStreamTools.read(in);
+				}
+				catch(EOFException e)
+				{
+					break;
+				}
+				storage.applyJournalRecord(tags);
+				numReplayed++;
+			}
+		}
+		catch(IOException e)
+		{
+			// Most likely a record torn by a crash. Everything before it has been applied
+			WarForgeMod.LOGGER.warn("Stopped replaying " + file.getName() + " after " + numReplayed + " records: " + e);
+		}
+		return numReplayed;
+	}
+
+	private void startEpoch(long newEpoch)
+	{
+		epoch = newEpoch;
+		if(directory == null)
+			return;
+
+		try
+		{
+			fileStream = new FileOutputStream(getFile(directory, epoch));
+			out = new DataOutputStream(new BufferedOutputStream(fileStream));
+		}
+		catch(IOException e)
+		{
+			WarForgeMod.LOGGER.error("Failed to open faction journal, falling back to full saves");
+			e.printStackTrace();
+			fileStream = null;
+			out = null;
+		}
+	}
+
+	private static File getFile(File directory, long epoch)
+	{
+		return new File(directory, FILE_PREFIX + epoch);
+	}
+
+	private static ArrayList<Long> listEpochs(File directory)
+	{
+		ArrayList<Long> epochs = new ArrayList<Long>();
+		if(directory == null)
+			return epochs;
+
+		String[] names = directory.list();
+		if(names == null)
+			return epochs;
+
+		for(String name : names)
+		{
+			if(!name.startsWith(FILE_PREFIX))
+				continue;
+			try
+			{
+				epochs.add(Long.parseLong(name.substring(FILE_PREFIX.length())));
+			}
+			catch(NumberFormatException e)
+			{
+				WarForgeMod.LOGGER.warn("Ignoring unexpected journal file " + name);
+			}
+		}
+		Collections.sort(epochs);
+		return epochs;
+	}
+}
@@ -0,0 +1,253 @@
+package com.flansmod.warforge.server;
+
+import java.util.HashMap;
+import java.util.List;
+
+// Factions ordered by a single stat, highest first, kept in a treap where each node knows the size of its subtree.
+// That gives "how many factions beat this score" and "which faction is in position k" in O(log n),
+// and a faction whose stat changes is just removed and reinserted.
+// Ties are broken by registration order so that every faction has a distinct position
+public class FactionRanking
+{
+	private static class Node
+	{
+		final Faction faction;
+		final int value;
+		final long order;
+		final int priority;
+		int size = 1;
+		Node left, right;
+
+		Node(Faction faction, int value, long order, int priority)
+		{
+			this.faction = faction;
+			this.value = value;
+			this.order = order;
+			this.priority = priority;
+		}
+	}
+
+	private final HashMap<Faction, Node> nodes = new HashMap<Faction, Node>();
+	private Node root = null;
+	private long nextOrder = 0L;
+	private int nextPriority = 0x2545F491;
+
+	public int size() { return nodes.size(); }
+
+	public boolean contains(Faction faction)
+	{
+		return nodes.containsKey(faction);
+	}
+
+	// Returns the value this faction is currently ranked by, which may be stale if the caller has not updated it
+	public int getRankedValue(Faction faction)
+	{
+		Node node = nodes.get(faction);
+		return node == null ? 0 : node.value;
+	}
+
+	// Moves the faction if its value changed. Factions that were never added are left out
+	public void update(Faction faction, int value)
+	{
+		if(nodes.containsKey(faction))
+			add(faction, value);
+	}
+
+	// Adds the faction, or moves it if its value changed
+	public void add(Faction faction, int value)
+	{
+		Node existing = nodes.get(faction);
+		long order;
+		if(existing != null)
+		{
+			if(existing.value == value)
+				return;
+			order = existing.order;
+			removeNode(existing);
+		}
+		else
+		{
+			order = nextOrder++;
+		}
+
+		Node node = new Node(faction, value, order, nextPriority());
+		nodes.put(faction, node);
+		Node[] split = split(root, node);
+		root = merge(merge(split[0], node), split[1]);
+	}
+
+	public void remove(Faction faction)
+	{
+		Node existing = nodes.remove(faction);
+		if(existing != null)
+			removeNode(existing);
+	}
+
+	public void clear()
+	{
+		nodes.clear();
+		root = null;
+	}
+
+	// Number of factions with a strictly higher value, so tied factions share a rank
+	public int countBetterThan(int value)
+	{
+		int count = 0;
+		Node node = root;
+		while(node != null)
+		{
+			if(node.value > value)
+			{
+				count += size(node.left) + 1;
+				node = node.right;
+			}
+			else
+			{
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	// Zero-indexed position in the ranking, or null if out of range
+	public Faction get(int index)
+	{
+		if(index < 0 || index >= size(root))
+			return null;
+
+		Node node = root;
+		while(node != null)
+		{
+			int leftSize = size(node.left);
+			if(index < leftSize)
+			{
+				node = node.left;
+			}
+			else if(index == leftSize)
+			{
+				return node.faction;
+			}
+			else
+			{
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+		return null;
+	}
+
+	public void getAll(List<Faction> target)
+	{
+		collect(root, target);
+	}
+
+	private void removeNode(Node node)
+	{
+		Node[] lower = split(root, node);
+		// lower[1] starts with the node itself, so peel it off the front
+		Node[] upper = splitFirst(lower[1]);
+		root = merge(lower[0], upper[1]);
+	}
+
+	// True if a comes before b in the ranking
+	private static boolean before(Node a, Node b)
+	{
+		return a.value > b.value || (a.value == b.value && a.order < b.order);
+	}
+
+	// Splits into nodes before the key, and the key plus everything after it
+	private static Node[] split(Node node, Node key)
+	{
+		if(node == null)
+			return new Node[] { null, null };
+
+		if(before(node, key))
+		{
+			Node[] split = split(node.right, key);
+			node.right = split[0];
+			recalc(node);
+			split[0] = node;
+			return split;
+		}
+		else
+		{
+			Node[] split = split(node.left, key);
+			node.left = split[1];
+			recalc(node);
+			split[1] = node;
+			return split;
+		}
+	}
+
+	// Splits off the first node
+	private static Node[] splitFirst(Node node)
+	{
+		if(node == null)
+			return new Node[] { null, null };
+
+		if(node.left == null)
+		{
+			Node rest = node.right;
+			node.right = null;
+			recalc(node);
+			return new Node[] { node, rest };
+		}
+
+		Node[] split = splitFirst(node.left);
+		node.left = split[1];
+		recalc(node);
+		split[1] = node;
+		return split;
+	}
+
+	private static Node merge(Node a, Node b)
+	{
+		if(a == null)
+			return b;
+		if(b == null)
+			return a;
+
+		if(a.priority > b.priority)
+		{
+			a.right = merge(a.right, b);
+			recalc(a);
+			return a;
+		}
+		else
+		{
+			b.left = merge(a, b.left);
+			recalc(b);
+			return b;
+		}
+	}
+
+	private static void collect(Node node, List<Faction> target)
+	{
+		if(node == null)
+			return;
+		collect(node.left, target);
+		target.add(node.faction);
+		collect(node.right, target);
+	}
+
+	private static int size(Node node)
+	{
+		return node == null ? 0 : node.size;
+	}
+
+	private static void recalc(Node node)
+	{
+		node.size = 1 + size(node.left) + size(node.right);
+	}
+
+	// Xorshift, the treap only needs priorities that look random
+	private int nextPriority()
+	{
+		int x = nextPriority;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		nextPriority = x;
+		return x;
+	}
+}
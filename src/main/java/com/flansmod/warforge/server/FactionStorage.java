@@ -3,7 +3,6 @@ package com.flansmod.warforge.server;
 import java.awt.Color;
 import java.util.*;
 
-import com.flansmod.warforge.api.ObjectIntPair;
 import com.flansmod.warforge.common.DimBlockPos;
 import com.flansmod.warforge.common.DimChunkPos;
 import com.flansmod.warforge.common.WarForgeConfig;
@@ -24,26 +23,34 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.nbt.NBTTagIntArray;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.DamageSource;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextComponentTranslation;
-import net.minecraft.world.World;
 
 public class FactionStorage {
     private HashMap<UUID, Faction> mFactions = new HashMap<UUID, Faction>();
     // This map contains every single claim, including siege camps.
     // So if you take one of these and try to look it up in the faction, check their active sieges too
-    private HashMap<DimChunkPos, UUID> mClaims = new HashMap<DimChunkPos, UUID>();
+    private ClaimIndex mClaims = new ClaimIndex();
+    // Reverse lookup of player -> faction. Kept in sync by Faction membership changes, so never put into it directly
+    private HashMap<UUID, Faction> mPlayerFactions = new HashMap<UUID, Faction>();
+    // Bumped on membership changes and citadel moves. Together with the claim index mod count, this tells the
+    // protection cache when its resolved configs are stale
+    private long mMembershipVersion = 0L;
     
     // This is all the currently active sieges, keyed by the defending position
     private HashMap<DimChunkPos, Siege> sieges = new HashMap<DimChunkPos, Siege>();
+    // Secondary lookups into sieges. Only go through addSiege / removeSiege so these stay in sync
+    private HashMap<DimBlockPos, Siege> mSiegesByCamp = new HashMap<DimBlockPos, Siege>();
+    private HashMap<DimChunkPos, Siege> mSiegesByCampChunk = new HashMap<DimChunkPos, Siege>();
+    private HashMap<UUID, ArrayList<Siege>> mSiegesByDefender = new HashMap<UUID, ArrayList<Siege>>();
+    private HashMap<UUID, ArrayList<Siege>> mSiegesByAttacker = new HashMap<UUID, ArrayList<Siege>>();
 
 	//This is all chunks that are under the "Grace" period
-	public HashMap<DimChunkPos, ObjectIntPair<UUID>> conqueredChunks = new HashMap<>();
+	public ConqueredChunks conqueredChunks = new ConqueredChunks();
     
     // SafeZone and WarZone
     public static UUID SAFE_ZONE_ID = Faction.createUUID("safezone");
@@ -84,14 +91,7 @@ public class FactionStorage {
 
 	public boolean isPlayerDefending(UUID playerID){
 		Faction faction = getFactionOfPlayer(playerID);
-		List<Siege> Sieges = new ArrayList<>(sieges.values());
-		for(Siege siege : Sieges){
-			if(siege.mDefendingFaction == faction.uuid){
-				return true;
-			}
-		}
-
-		return false;
+		return faction != null && mSiegesByDefender.containsKey(faction.uuid);
 	}
 
 	public long getPlayerCooldown(UUID playerID){
@@ -100,7 +100,57 @@ public class FactionStorage {
 
 	public HashMap<DimChunkPos, Siege> getSieges() { return sieges; }
 
-	public HashMap<DimChunkPos, UUID> getClaims() { return mClaims; }
+	public Siege getSiegeByCamp(DimBlockPos siegeCampPos) { return mSiegesByCamp.get(siegeCampPos); }
+
+	public List<Siege> getSiegesDefendedBy(UUID factionID) {
+		List<Siege> factionSieges = mSiegesByDefender.get(factionID);
+		return factionSieges == null ? Collections.emptyList() : factionSieges;
+	}
+
+	public List<Siege> getSiegesAttackedBy(UUID factionID) {
+		List<Siege> factionSieges = mSiegesByAttacker.get(factionID);
+		return factionSieges == null ? Collections.emptyList() : factionSieges;
+	}
+
+	private void addSiege(DimChunkPos defendingChunk, Siege siege) {
+		// Replacing a siege must not leave the old one in the lookups
+		removeSiege(defendingChunk);
+
+		sieges.put(defendingChunk, siege);
+		for(DimBlockPos siegeCampPos : siege.mAttackingSiegeCamps) {
+			mSiegesByCamp.put(siegeCampPos, siege);
+			mSiegesByCampChunk.put(siegeCampPos.toChunkPos(), siege);
+		}
+		mSiegesByDefender.computeIfAbsent(siege.mDefendingFaction, id -> new ArrayList<Siege>()).add(siege);
+		mSiegesByAttacker.computeIfAbsent(siege.mAttackingFaction, id -> new ArrayList<Siege>()).add(siege);
+	}
+
+	private void removeSiege(DimChunkPos defendingChunk) {
+		Siege siege = sieges.remove(defendingChunk);
+		if(siege == null)
+			return;
+
+		for(DimBlockPos siegeCampPos : siege.mAttackingSiegeCamps) {
+			mSiegesByCamp.remove(siegeCampPos, siege);
+			mSiegesByCampChunk.remove(siegeCampPos.toChunkPos(), siege);
+		}
+		removeFromIndex(mSiegesByDefender, siege.mDefendingFaction, siege);
+		removeFromIndex(mSiegesByAttacker, siege.mAttackingFaction, siege);
+	}
+
+	private static void removeFromIndex(HashMap<UUID, ArrayList<Siege>> index, UUID factionID, Siege siege) {
+		ArrayList<Siege> factionSieges = index.get(factionID);
+		if(factionSieges != null) {
+			factionSieges.remove(siege);
+			if(factionSieges.isEmpty())
+				index.remove(factionID);
+		}
+	}
+
+	public ClaimIndex getClaims() { return mClaims; }
+
+	// Changes whenever anything that GetProtections depends on changes
+	public long getProtectionVersion() { return mClaims.getModCount() + mMembershipVersion; }
 
     public boolean IsPlayerRoleInFaction(UUID playerID, UUID factionID, Faction.Role role)
     {
@@ -175,19 +225,72 @@ public class FactionStorage {
     
     public UUID getClaim(DimChunkPos pos)
     {
-		if(mClaims.containsKey(pos))
-			return mClaims.get(pos);
-		return Faction.nullUuid;
+		return getClaim(pos.mDim, pos.x, pos.z);
     }
+
+	// Allocation free version for hot paths such as protection checks
+	public UUID getClaim(int dim, int chunkX, int chunkZ)
+	{
+		UUID factionID = mClaims.get(dim, chunkX, chunkZ);
+		return factionID != null ? factionID : Faction.nullUuid;
+	}
     
     public Faction getFactionOfPlayer(UUID playerID)
     {
+		return mPlayerFactions.get(playerID);
+    }
+
+	// Called by Faction whenever a player is added to its member list
+	public void onPlayerJoinedFaction(UUID playerID, Faction faction) {
+		mMembershipVersion++;
+		Faction previous = mPlayerFactions.put(playerID, faction);
+		if(previous != null && previous != faction)
+			WarForgeMod.LOGGER.error("Player " + playerID + " joined " + faction.name + " while still indexed as a member of " + previous.name);
+	}
+
+	// Called by Faction whenever a player is removed from its member list
+	public void onPlayerLeftFaction(UUID playerID, Faction faction) {
+		// Only drop the entry if it points at this faction, so stale removals can't unlink a newer membership
+		if(mPlayerFactions.remove(playerID, faction))
+			mMembershipVersion++;
+	}
+
+	// Rebuilds the player -> faction index from the member lists and fixes any entries that have drifted.
+	// Returns the number of discrepancies found, so 0 means the index was consistent
+	public int verifyPlayerIndex() {
+		HashMap<UUID, Faction> expected = new HashMap<UUID, Faction>();
+		int numErrors = 0;
 		for(HashMap.Entry<UUID, Faction> entry : mFactions.entrySet()) {
-			if(entry.getValue().isPlayerInFaction(playerID))
-				return entry.getValue();
+			for(UUID playerID : entry.getValue().members.keySet()) {
+				Faction existing = expected.put(playerID, entry.getValue());
+				if(existing != null) {
+					WarForgeMod.LOGGER.error("Player " + playerID + " is a member of both " + existing.name + " and " + entry.getValue().name);
+					numErrors++;
+				}
+			}
 		}
-		return null;
-    }
+
+		for(HashMap.Entry<UUID, Faction> entry : expected.entrySet()) {
+			Faction indexed = mPlayerFactions.get(entry.getKey());
+			if(indexed != entry.getValue()) {
+				WarForgeMod.LOGGER.error("Player index had " + entry.getKey() + " in " + (indexed == null ? "no faction" : indexed.name) + ", expected " + entry.getValue().name);
+				numErrors++;
+			}
+		}
+		for(UUID playerID : mPlayerFactions.keySet()) {
+			if(!expected.containsKey(playerID)) {
+				WarForgeMod.LOGGER.error("Player index had stale entry for " + playerID);
+				numErrors++;
+			}
+		}
+
+		if(numErrors > 0) {
+			mMembershipVersion++;
+			mPlayerFactions.clear();
+			mPlayerFactions.putAll(expected);
+		}
+		return numErrors;
+	}
     
     public void Update()
     {
@@ -197,49 +300,63 @@ public class FactionStorage {
     }
 
 	public void updateConqueredChunks(long msUpdateTime) {
-		int msPassed = (int) (msUpdateTime - WarForgeMod.previousUpdateTimestamp); // the difference is likely less than 596h (max time storage of int using ms)
-
-		try {
-			// concurrent modification exception can occur when conquered chunks is checked by other methods, such as pre block place
-			for (DimChunkPos chunkPosKey : conqueredChunks.keySet()) {
-				ObjectIntPair<UUID> chunkEntry = conqueredChunks.get(chunkPosKey);
-
-				if (chunkEntry.getRight() < msPassed) conqueredChunks.remove(chunkPosKey);
-				else chunkEntry.setRight(chunkEntry.getRight() - msPassed);
-			}
-		} catch (Exception e) {
-			WarForgeMod.LOGGER.atError().log("Error when updating conquered chunk of type " + e + ", with stacktrace:");
-			e.printStackTrace();
-		}
+		conqueredChunks.expire(msUpdateTime);
 	}
     
+	// Day rollovers are queued on WarForgeMod.DAY_ROLLOVER in small steps and run over the next few ticks.
+	// Each step re-checks that its siege or faction still exists, as things can change between queueing and running
     public void advanceSiegeDay()
     {
+		DayRolloverScheduler rollover = WarForgeMod.DAY_ROLLOVER;
+		rollover.begin("siege day");
+		rollover.add(WarForgeMod.JOURNAL::markNeedsSnapshot);
 		for(HashMap.Entry<DimChunkPos, Siege> kvp : sieges.entrySet()) {
-			kvp.getValue().AdvanceDay();
+			DimChunkPos siegePos = kvp.getKey();
+			Siege siege = kvp.getValue();
+			rollover.add(() -> {
+				if(sieges.get(siegePos) == siege)
+					siege.AdvanceDay();
+			});
 		}
 
-		CheckForCompleteSieges();
+		rollover.add(this::CheckForCompleteSieges);
 
-		if(!WarForgeConfig.LEGACY_USES_YIELD_TIMER) {
-			for(HashMap.Entry<UUID, Faction> entry : mFactions.entrySet()) {
-				entry.getValue().increaseLegacy();
-			}
-		}
+		if(!WarForgeConfig.LEGACY_USES_YIELD_TIMER)
+			addLegacySteps(rollover);
+		rollover.add(WarForgeMod.JOURNAL::markNeedsSnapshot);
+		rollover.end();
     }
     
     public void advanceYieldDay()
     {
+		DayRolloverScheduler rollover = WarForgeMod.DAY_ROLLOVER;
+		rollover.begin("yield day");
+		rollover.add(WarForgeMod.JOURNAL::markNeedsSnapshot);
 		for(HashMap.Entry<UUID, Faction> entry : mFactions.entrySet()) {
-			entry.getValue().awardYields();
-		}
-
-		if(WarForgeConfig.LEGACY_USES_YIELD_TIMER) {
-			for(HashMap.Entry<UUID, Faction> entry : mFactions.entrySet()) {
-				entry.getValue().increaseLegacy();
+			Faction faction = entry.getValue();
+			for(DimBlockPos claimPos : faction.claims.getPositions()) {
+				rollover.add(() -> {
+					if(mFactions.get(faction.uuid) == faction)
+						faction.awardYield(claimPos);
+				});
 			}
 		}
+
+		if(WarForgeConfig.LEGACY_USES_YIELD_TIMER)
+			addLegacySteps(rollover);
+		rollover.add(WarForgeMod.JOURNAL::markNeedsSnapshot);
+		rollover.end();
     }
+
+	private void addLegacySteps(DayRolloverScheduler rollover) {
+		for(HashMap.Entry<UUID, Faction> entry : mFactions.entrySet()) {
+			Faction faction = entry.getValue();
+			rollover.add(() -> {
+				if(mFactions.get(faction.uuid) == faction)
+					faction.increaseLegacy();
+			});
+		}
+	}
     
     public void playerDied(EntityPlayerMP playerWhoDied, DamageSource source)
     {
@@ -249,8 +366,14 @@ public class FactionStorage {
 			Faction killerFac = getFactionOfPlayer(killer.getUniqueID());
 
 			if(killedFac != null && killerFac != null) {
-				for(HashMap.Entry<DimChunkPos, Siege> kvp : sieges.entrySet()) {
-					kvp.getValue().OnPVPKill(killer, playerWhoDied);
+				// A kill only counts towards sieges between the killer's and victim's factions
+				for(Siege siege : getSiegesAttackedBy(killerFac.uuid)) {
+					if(siege.mDefendingFaction.equals(killedFac.uuid))
+						siege.OnPVPKill(killer, playerWhoDied);
+				}
+				for(Siege siege : getSiegesDefendedBy(killerFac.uuid)) {
+					if(siege.mAttackingFaction.equals(killedFac.uuid))
+						siege.OnPVPKill(killer, playerWhoDied);
 				}
 
 				CheckForCompleteSieges();
@@ -265,11 +388,14 @@ public class FactionStorage {
 					numTimesKilled = 1;
 					killerFac.killCounter.put(playerWhoDied.getUniqueID(), numTimesKilled);
 				}
+				WarForgeMod.JOURNAL.recordKills(killerFac, playerWhoDied.getUniqueID(), numTimesKilled);
 
 				if(numTimesKilled <= WarForgeConfig.NOTORIETY_KILL_CAP_PER_PLAYER) {
 					if(killerFac != killedFac) {
 						((EntityPlayer)source.getTrueSource()).sendMessage(new TextComponentString("Killing " + playerWhoDied.getName() + " earned your faction " + WarForgeConfig.NOTORIETY_PER_PLAYER_KILL + " notoriety"));
 						killerFac.notoriety += WarForgeConfig.NOTORIETY_PER_PLAYER_KILL;
+						WarForgeMod.LEADERBOARD.UpdateFaction(killerFac);
+						WarForgeMod.JOURNAL.recordStats(killerFac);
 					}
 				} else {
 					((EntityPlayer)source.getTrueSource()).sendMessage(new TextComponentString("Your faction has already killed " + playerWhoDied.getName() + " " + numTimesKilled + " times. You will not become more notorious."));
@@ -282,14 +408,18 @@ public class FactionStorage {
     {
 		for(HashMap.Entry<UUID, Faction> entry : mFactions.entrySet()) {
 			entry.getValue().notoriety = 0;
+			WarForgeMod.LEADERBOARD.UpdateFaction(entry.getValue());
 		}
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
     }
     
     public void clearLegacy()
     {
 		for(HashMap.Entry<UUID, Faction> entry : mFactions.entrySet()) {
 			entry.getValue().legacy = 0;
+			WarForgeMod.LEADERBOARD.UpdateFaction(entry.getValue());
 		}
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
     }
 
 	public void CheckForCompleteSieges() {
@@ -321,14 +451,15 @@ public class FactionStorage {
 			return;
 		}
 
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
 		DimBlockPos blockPos = defenders.getSpecificPosForClaim(chunkPos);
 		boolean successful = siege.WasSuccessful();
 		if(successful) {
 			if (WarForgeConfig.ATTACKER_CONQUERED_CHUNK_PERIOD > 0) {
-				conqueredChunks.put(chunkPos, new ObjectIntPair<>(copyUUID(attackers.uuid), WarForgeConfig.ATTACKER_CONQUERED_CHUNK_PERIOD));
+				conqueredChunks.put(chunkPos, copyUUID(attackers.uuid), WarForgeConfig.ATTACKER_CONQUERED_CHUNK_PERIOD, WarForgeMod.currTickTimestamp);
 				for (DimBlockPos siegeCampPos : siege.mAttackingSiegeCamps)
 					if (siegeCampPos != null)
-						conqueredChunks.put(siegeCampPos.toChunkPos(), new ObjectIntPair<>(copyUUID(attackers.uuid), WarForgeConfig.ATTACKER_CONQUERED_CHUNK_PERIOD));
+						conqueredChunks.put(siegeCampPos.toChunkPos(), copyUUID(attackers.uuid), WarForgeConfig.ATTACKER_CONQUERED_CHUNK_PERIOD, WarForgeMod.currTickTimestamp);
 			}
 
 			defenders.onClaimLost(blockPos, true); // drops block if SIEGE_CAPTURE is off (claim is not overriden), or drops nothing if it is on (claim effectively removed and instantly replaced)
@@ -336,6 +467,7 @@ public class FactionStorage {
 			attackers.messageAll(new TextComponentTranslation("warforge.info.siege_won_attackers", attackers.name, blockPos.toFancyString()));
 			defenders.messageAll(new TextComponentTranslation("warforge.info.siege_lost_defenders", defenders.name, blockPos.toFancyString()));
 			attackers.notoriety += WarForgeConfig.NOTORIETY_PER_SIEGE_ATTACK_SUCCESS;
+			WarForgeMod.LEADERBOARD.UpdateFaction(attackers);
 			if(WarForgeConfig.SIEGE_CAPTURE) {
 				WarForgeMod.MC_SERVER.getWorld(blockPos.dim).setBlockState(blockPos.toRegularPos(), WarForgeMod.CONTENT.basicClaimBlock.getDefaultState());
 				TileEntity te = WarForgeMod.MC_SERVER.getWorld(blockPos.dim).getTileEntity(blockPos.toRegularPos());
@@ -343,20 +475,21 @@ public class FactionStorage {
 			}
 		} else {
 			if (WarForgeConfig.DEFENDER_CONQUERED_CHUNK_PERIOD > 0) {
-				conqueredChunks.put(chunkPos, new ObjectIntPair<>(copyUUID(defenders.uuid), WarForgeConfig.DEFENDER_CONQUERED_CHUNK_PERIOD)); // defenders get won claims defended
+				conqueredChunks.put(chunkPos, copyUUID(defenders.uuid), WarForgeConfig.DEFENDER_CONQUERED_CHUNK_PERIOD, WarForgeMod.currTickTimestamp); // defenders get won claims defended
 				for (DimBlockPos siegeCampPos : siege.mAttackingSiegeCamps)
 					if (siegeCampPos != null)
-						conqueredChunks.put(siegeCampPos.toChunkPos(), new ObjectIntPair<>(copyUUID(defenders.uuid), WarForgeConfig.DEFENDER_CONQUERED_CHUNK_PERIOD));
+						conqueredChunks.put(siegeCampPos.toChunkPos(), copyUUID(defenders.uuid), WarForgeConfig.DEFENDER_CONQUERED_CHUNK_PERIOD, WarForgeMod.currTickTimestamp);
 			}
 			attackers.messageAll(new TextComponentTranslation("warforge.info.siege_lost_attackers", attackers.name, blockPos.toFancyString()));
 			defenders.messageAll(new TextComponentTranslation("warforge.info.siege_won_defenders", defenders.name, blockPos.toFancyString()));
 			defenders.notoriety += WarForgeConfig.NOTORIETY_PER_SIEGE_DEFEND_SUCCESS;
+			WarForgeMod.LEADERBOARD.UpdateFaction(defenders);
 		}
 
 		if (doCleanup) siege.OnCompleted(successful);
 
 		// Then remove the siege
-		sieges.remove(chunkPos);
+		removeSiege(chunkPos);
 	}
 
 	// copy UUID's are used in the case that the UUID referred to are nulled at some point, which is not ideal for chunk protection
@@ -412,7 +545,6 @@ public class FactionStorage {
 
 		// All checks passed, create a faction
 		Faction faction = new Faction();
-		faction.onlinePlayerCount = 1;
 		faction.uuid = proposedID;
 		faction.name = factionName;
 		faction.citadelPos = new DimBlockPos(citadel);
@@ -423,6 +555,7 @@ public class FactionStorage {
 		faction.wealth = 0;
 
 		mFactions.put(proposedID, faction);
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
 		citadel.onServerSetFaction(faction);
 		mClaims.put(citadel.getClaimPos().toChunkPos(), proposedID);
 		WarForgeMod.LEADERBOARD.RegisterFaction(faction);
@@ -609,38 +742,32 @@ public class FactionStorage {
 		}
 
 		Faction faction = mFactions.get(factionID);
-		for(Map.Entry<DimBlockPos, Integer> kvp : faction.claims.entrySet()) {
-			mClaims.remove(kvp.getKey().toChunkPos());
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
+		for(int i = 0; i < faction.claims.size(); i++) {
+			mClaims.remove(faction.claims.getDim(i), faction.claims.getX(i) >> 4, faction.claims.getZ(i) >> 4);
 		}
 		faction.disband();
 		mFactions.remove(factionID);
 		WarForgeMod.LEADERBOARD.UnregisterFaction(faction);
+		WarForgeMod.INFO_SYNC.onFactionRemoved(faction.uuid);
 
 		return true;
     }
     
     public void FactionDefeated(Faction faction)
     {
-		for(Map.Entry<DimBlockPos, Integer> kvp : faction.claims.entrySet()) {
-			mClaims.remove(kvp.getKey().toChunkPos());
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
+		for(int i = 0; i < faction.claims.size(); i++) {
+			mClaims.remove(faction.claims.getDim(i), faction.claims.getX(i) >> 4, faction.claims.getZ(i) >> 4);
 		}
 		faction.disband();
 		mFactions.remove(faction.uuid);
 		WarForgeMod.LEADERBOARD.UnregisterFaction(faction);
+		WarForgeMod.INFO_SYNC.onFactionRemoved(faction.uuid);
     }
 
 	public boolean IsSiegeInProgress(DimChunkPos chunkPos) {
-
-		for(Map.Entry<DimChunkPos, Siege> kvp : sieges.entrySet()) {
-			if(kvp.getKey().equals(chunkPos))
-				return true;
-
-			for(DimBlockPos attackerPos : kvp.getValue().mAttackingSiegeCamps) {
-				if(attackerPos.toChunkPos().equals(chunkPos))
-					return true;
-			}
-		}
-		return false;
+		return sieges.containsKey(chunkPos) || mSiegesByCampChunk.containsKey(chunkPos);
 	}
     
     public void requestStartSiege(EntityPlayer factionOfficer, DimBlockPos siegeCampPos, EnumFacing direction)
@@ -683,17 +810,19 @@ public class FactionStorage {
 			return;
 		}
 
-		if (conqueredChunks.get(defendingPos.toChunkPos()) != null) {
+		ConqueredChunks.Entry conquered = conqueredChunks.get(defendingPos.toChunkPos());
+		if (conquered != null) {
 			factionOfficer.sendMessage(new TextComponentTranslation("warforge.info.chunk_is_conquered",
-					defending.name, WarForgeMod.formatTime(conqueredChunks.get(defendingPos.toChunkPos()).getRight())));
+					defending.name, WarForgeMod.formatTime(conquered.getRemainingMs(WarForgeMod.currTickTimestamp))));
 			return;
 		}
 
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
 		Siege siege = new Siege(attacking.uuid, defendingFactionID, defendingPos);
 		siege.mAttackingSiegeCamps.add(siegeCampPos);
 
 		requestPlaceFlag((EntityPlayerMP)factionOfficer, siegeCampPos);
-		sieges.put(defendingChunk, siege);
+		addSiege(defendingChunk, siege);
 		siegeTE.setSiegeTarget(defendingPos);
 		siege.Start();
 
@@ -704,8 +833,9 @@ public class FactionStorage {
 	public void EndSiege(DimBlockPos getPos) {
 		Siege siege = sieges.get(getPos.toChunkPos());
 		if(siege != null) {
+			WarForgeMod.JOURNAL.markNeedsSnapshot();
 			siege.OnCancelled();
-			sieges.remove(getPos.toChunkPos());
+			removeSiege(getPos.toChunkPos());
 		}
 	}
 
@@ -811,16 +941,14 @@ public class FactionStorage {
 			return false;
 		}
 
-		for(HashMap.Entry<DimChunkPos, Siege> siege : sieges.entrySet()) {
-			if(siege.getKey().equals(pos.toChunkPos())) {
-				player.sendMessage(new TextComponentString("This claim is currently under siege"));
-				return false;
-			}
+		if(sieges.containsKey(pos.toChunkPos())) {
+			player.sendMessage(new TextComponentString("This claim is currently under siege"));
+			return false;
+		}
 
-			if(siege.getValue().mAttackingSiegeCamps.contains(pos)) {
-				player.sendMessage(new TextComponentString("This siege camp is currently in a siege"));
-				return false;
-			}
+		if(mSiegesByCamp.containsKey(pos)) {
+			player.sendMessage(new TextComponentString("This siege camp is currently in a siege"));
+			return false;
 		}
 
 		faction.onClaimLost(pos);
@@ -855,14 +983,10 @@ public class FactionStorage {
 		}
 
 		faction.setColour(colour);
-		for(World world : WarForgeMod.MC_SERVER.worlds) {
-			for(TileEntity te : world.loadedTileEntityList) {
-				if(te instanceof IClaim) {
-					if(((IClaim) te).getFaction().equals(faction.uuid)) {
-						((IClaim) te).updateColour(colour);
-					}
-				}
-			}
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
+		// Unloaded claims pick the colour up from the faction when they next load
+		for(IClaim claim : WarForgeMod.CLAIM_REGISTRY.getLoadedClaims(faction.uuid)) {
+			claim.updateColour(colour);
 		}
 
 		return true;
@@ -882,11 +1006,9 @@ public class FactionStorage {
 			return false;
 		}
 
-		for(HashMap.Entry<DimChunkPos, Siege> kvp : sieges.entrySet()) {
-			if(kvp.getValue().mDefendingFaction.equals(faction.uuid)) {
-				player.sendMessage(new TextComponentString("There is an ongoing siege against your faction"));
-				return false;
-			}
+		if(!getSiegesDefendedBy(faction.uuid).isEmpty()) {
+			player.sendMessage(new TextComponentString("There is an ongoing siege against your faction"));
+			return false;
 		}
 
 
@@ -895,6 +1017,8 @@ public class FactionStorage {
 			return false;
 		}
 
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
+
 		// Set new citadel
 		WarForgeMod.MC_SERVER.getWorld(pos.dim).setBlockState(pos.toRegularPos(), WarForgeMod.CONTENT.citadelBlock.getDefaultState());
 		TileEntityCitadel newCitadel = (TileEntityCitadel)WarForgeMod.MC_SERVER.getWorld(pos.dim).getTileEntity(pos.toRegularPos());
@@ -905,20 +1029,97 @@ public class FactionStorage {
 
 		// Update pos
 		faction.citadelPos = pos;
+		mMembershipVersion++;
 		newCitadel.onServerSetFaction(faction);
 		newClaim.onServerSetFaction(faction);
 
 		WarForgeMod.INSTANCE.messageAll(new TextComponentString(faction.name + " moved their citadel"), true);
 
 		faction.citadelMoveCooldown = WarForgeConfig.CITADEL_MOVE_NUM_DAYS;
+		faction.evaluateVault();
 
 		return true;
 	}
     
+	// Applies one FactionJournal record on top of the loaded snapshot. Runs before any player is online, so no messages
+	// or world changes, just the data. Records for factions that no longer exist are skipped
+	public void applyJournalRecord(NBTTagCompound record) {
+		byte op = record.getByte("op");
+		if(op == FactionJournal.OP_SIEGE_PROGRESS) {
+			Siege siege = sieges.get(new DimChunkPos(record.getInteger("dim"), record.getInteger("x"), record.getInteger("z")));
+			if(siege != null)
+				siege.setAttackProgress(record.getInteger("progress"));
+			return;
+		}
+
+		Faction faction = mFactions.get(record.getUniqueId("faction"));
+		if(faction == null)
+			return;
+
+		switch(op) {
+			case FactionJournal.OP_CLAIM_SET: {
+				DimBlockPos pos = DimBlockPos.readFromNBT(record, "pos");
+				faction.claims.put(pos, record.getInteger("pendingYields"));
+				mClaims.put(pos.toChunkPos(), faction.uuid);
+				break;
+			}
+			case FactionJournal.OP_CLAIM_REMOVE: {
+				DimBlockPos pos = DimBlockPos.readFromNBT(record, "pos");
+				if(faction.claims.remove(pos))
+					mClaims.remove(pos.toChunkPos());
+				break;
+			}
+			case FactionJournal.OP_MEMBER_ADD: {
+				UUID playerID = record.getUniqueId("player");
+				Faction existing = mPlayerFactions.get(playerID);
+				if(existing != null && existing != faction && existing.members.remove(playerID) != null)
+					onPlayerLeftFaction(playerID, existing);
+				if(!faction.members.containsKey(playerID)) {
+					faction.members.put(playerID, new PlayerData());
+					onPlayerJoinedFaction(playerID, faction);
+				}
+				break;
+			}
+			case FactionJournal.OP_MEMBER_REMOVE: {
+				UUID playerID = record.getUniqueId("player");
+				if(faction.members.remove(playerID) != null)
+					onPlayerLeftFaction(playerID, faction);
+				break;
+			}
+			case FactionJournal.OP_MEMBER_ROLE: {
+				PlayerData data = faction.members.get(record.getUniqueId("player"));
+				if(data != null)
+					data.role = Role.valueOf(record.getString("role"));
+				break;
+			}
+			case FactionJournal.OP_STATS: {
+				faction.notoriety = record.getInteger("notoriety");
+				faction.wealth = record.getInteger("wealth");
+				faction.legacy = record.getInteger("legacy");
+				WarForgeMod.LEADERBOARD.UpdateFaction(faction);
+				break;
+			}
+			case FactionJournal.OP_KILLS: {
+				faction.killCounter.put(record.getUniqueId("player"), record.getInteger("count"));
+				break;
+			}
+			default:
+				WarForgeMod.LOGGER.warn("Skipping faction journal record with unknown op " + op);
+				break;
+		}
+	}
+
     public void readFromNBT(NBTTagCompound tags) {
 		mFactions.clear();
+		WarForgeMod.LEADERBOARD.Clear();
+		WarForgeMod.INFO_SYNC.clear();
 		mClaims.clear();
+		mPlayerFactions.clear();
 		sieges.clear();
+		mSiegesByCamp.clear();
+		mSiegesByCampChunk.clear();
+		mSiegesByDefender.clear();
+		mSiegesByAttacker.clear();
 
 		InitNeutralZones();
 
@@ -937,14 +1138,21 @@ public class FactionStorage {
 				faction = new Faction();
 				faction.uuid = uuid;
 				mFactions.put(uuid, faction);
-				WarForgeMod.LEADERBOARD.RegisterFaction(faction);
 			}
 
 			faction.readFromNBT(factionTags);
+			// Registered once the stats are read, so it goes straight into the right place in the rankings
+			if(faction != SAFE_ZONE && faction != WAR_ZONE)
+				WarForgeMod.LEADERBOARD.RegisterFaction(faction);
 
 			// Also populate the DimChunkPos lookup table
-			for(DimBlockPos blockPos : faction.claims.keySet()) {
-				mClaims.put(blockPos.toChunkPos(), uuid);
+			for(int i = 0; i < faction.claims.size(); i++) {
+				mClaims.put(faction.claims.getDim(i), faction.claims.getX(i) >> 4, faction.claims.getZ(i) >> 4, uuid);
+			}
+
+			// And the player lookup table
+			for(UUID playerID : faction.members.keySet()) {
+				onPlayerJoinedFaction(playerID, faction);
 			}
 		}
 
@@ -958,26 +1166,60 @@ public class FactionStorage {
 			Siege siege = new Siege();
 			siege.ReadFromNBT(siegeTags);
 
-			sieges.put(new DimChunkPos(dim, x, z), siege);
+			addSiege(new DimChunkPos(dim, x, z), siege);
 		}
 
 		readConqueredChunks(tags);
 	}
 
 	private void readConqueredChunks(NBTTagCompound tags) {
-		conqueredChunks = new HashMap<>();
+		conqueredChunks.clear();
+		// Remaining time only runs down while the server is up, so deadlines are rebuilt from the time of loading
+		long now = System.currentTimeMillis();
 		NBTTagCompound conqueredChunksDataList = tags.getCompoundTag("conqueredChunks");
 
 		// 11 is type id for int array
+		if(!conqueredChunksDataList.hasKey("dim", 11)) {
+			readLegacyConqueredChunks(conqueredChunksDataList, now);
+			return;
+		}
+
+		int[] dims = conqueredChunksDataList.getIntArray("dim");
+		int[] xs = conqueredChunksDataList.getIntArray("x");
+		int[] zs = conqueredChunksDataList.getIntArray("z");
+		int[] factionIndices = conqueredChunksDataList.getIntArray("faction");
+		int[] times = conqueredChunksDataList.getIntArray("time");
+		int[] factionPalette = conqueredChunksDataList.getIntArray("factionPalette");
+
+		int count = dims.length;
+		if(xs.length != count || zs.length != count || factionIndices.length != count || times.length != count || factionPalette.length % 4 != 0) {
+			WarForgeMod.LOGGER.error("Conquered chunk data is malformed, skipping it");
+			return;
+		}
+
+		UUID[] factionIDs = new UUID[factionPalette.length / 4];
+		for(int i = 0; i < factionIDs.length; i++) {
+			factionIDs[i] = BEIntArrayToUUID(Arrays.copyOfRange(factionPalette, i * 4, i * 4 + 4));
+		}
+
+		for(int i = 0; i < count; i++) {
+			if(factionIndices[i] < 0 || factionIndices[i] >= factionIDs.length)
+				continue;
+			conqueredChunks.put(new DimChunkPos(dims[i], xs[i], zs[i]), factionIDs[factionIndices[i]], times[i], now);
+		}
+	}
+
+	// Saves from before the columnar format stored each entry as its own tag list, keyed conqueredChunk_<index>
+	private void readLegacyConqueredChunks(NBTTagCompound conqueredChunksDataList, long now) {
 		int index = 0;
 		while (true) {
-			NBTTagList keyValPair = conqueredChunksDataList.getTagList(new StringBuilder("conqueredChunk_").append(index).toString(), 11);
+			NBTTagList keyValPair = conqueredChunksDataList.getTagList("conqueredChunk_" + index, 11);
 			if (keyValPair.isEmpty()) break; // exit once invalid (empty, since getTagList never returns null) is found, as it is assumed this is the first non-existent/ invalid index
 			int[] dimInfo = keyValPair.getIntArrayAt(0);
 			DimChunkPos chunkPosKey = new DimChunkPos(dimInfo[0], dimInfo[1], dimInfo[2]);
 			UUID factionID = BEIntArrayToUUID(keyValPair.getIntArrayAt(1));
 
-			conqueredChunks.put(chunkPosKey, new ObjectIntPair<>(factionID, keyValPair.getIntArrayAt(2)[0]));
+			conqueredChunks.put(chunkPosKey, factionID, keyValPair.getIntArrayAt(2)[0], now);
 			++index;
 		}
 	}
@@ -1008,21 +1250,50 @@ public class FactionStorage {
 		writeConqueredChunks(tags);
 	}
 
+	// Stored as parallel int arrays, one element per conquered chunk. Most conquered chunks belong to a handful of
+	// factions, so faction IDs are stored once in a palette (4 big endian ints each) and referenced by index
 	private void writeConqueredChunks(NBTTagCompound tags) {
-		NBTTagCompound conqueredChunksDataList = new NBTTagCompound();
+		int count = conqueredChunks.size();
+		int[] dims = new int[count];
+		int[] xs = new int[count];
+		int[] zs = new int[count];
+		int[] factionIndices = new int[count];
+		int[] times = new int[count];
+		ArrayList<UUID> factionIDs = new ArrayList<>();
+		HashMap<UUID, Integer> factionLookup = new HashMap<>();
+
+		long now = System.currentTimeMillis();
 		int index = 0;
-		for (DimChunkPos chunkPosKey : conqueredChunks.keySet()) {
-			// values in tag list must all be same, so all types are changed to use int arrays
-			NBTTagList keyValPair = new NBTTagList();
-			keyValPair.appendTag(new NBTTagIntArray(new int[] {chunkPosKey.mDim, chunkPosKey.x, chunkPosKey.z}));
-			keyValPair.appendTag(new NBTTagIntArray(UUIDToBEIntArray(conqueredChunks.get(chunkPosKey).getLeft())));
-			keyValPair.appendTag(new NBTTagIntArray(new int[] {conqueredChunks.get(chunkPosKey).getRight()}));
-
-			conqueredChunksDataList.setTag(new StringBuilder("conqueredChunk_").append(index).toString(), keyValPair);
+		for (ConqueredChunks.Entry entry : conqueredChunks.getEntries()) {
+			DimChunkPos chunkPosKey = entry.pos;
+			UUID factionID = entry.factionID;
+			Integer factionIndex = factionLookup.get(factionID);
+			if(factionIndex == null) {
+				factionIndex = factionIDs.size();
+				factionIDs.add(factionID);
+				factionLookup.put(factionID, factionIndex);
+			}
 
+			dims[index] = chunkPosKey.mDim;
+			xs[index] = chunkPosKey.x;
+			zs[index] = chunkPosKey.z;
+			factionIndices[index] = factionIndex;
+			times[index] = (int) Math.min(Integer.MAX_VALUE, entry.getRemainingMs(now));
 			++index;
 		}
 
+		int[] factionPalette = new int[factionIDs.size() * 4];
+		for(int i = 0; i < factionIDs.size(); i++) {
+			System.arraycopy(UUIDToBEIntArray(factionIDs.get(i)), 0, factionPalette, i * 4, 4);
+		}
+
+		NBTTagCompound conqueredChunksDataList = new NBTTagCompound();
+		conqueredChunksDataList.setIntArray("dim", dims);
+		conqueredChunksDataList.setIntArray("x", xs);
+		conqueredChunksDataList.setIntArray("z", zs);
+		conqueredChunksDataList.setIntArray("faction", factionIndices);
+		conqueredChunksDataList.setIntArray("time", times);
+		conqueredChunksDataList.setIntArray("factionPalette", factionPalette);
 		tags.setTag("conqueredChunks", conqueredChunksDataList);
 	}
 
@@ -1051,5 +1322,6 @@ public class FactionStorage {
 				pDataKVP.getValue().moveFlagCooldown = 0;
 			}
 		}
+		WarForgeMod.JOURNAL.markNeedsSnapshot();
 	}
 }
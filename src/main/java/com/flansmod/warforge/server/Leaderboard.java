@@ -2,6 +2,7 @@ package com.flansmod.warforge.server;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.UUID;
 
@@ -70,32 +71,63 @@ public class Leaderboard
 	private static FactionSorterWealth wealthSorter = new FactionSorterWealth();
 	private static FactionSorterLegacy legacySorter = new FactionSorterLegacy();
 	private static FactionSorterTotal totalSorter = new FactionSorterTotal();
-	private ArrayList<Faction> mFactions = new ArrayList<Faction>();
+	// One ranking per stat, kept up to date as stats change rather than sorted on request
+	private final EnumMap<FactionStat, FactionRanking> mRankings = new EnumMap<FactionStat, FactionRanking>(FactionStat.class);
+	
+	public Leaderboard()
+	{
+		for(FactionStat stat : FactionStat.values())
+			mRankings.put(stat, new FactionRanking());
+	}
+	
+	public static int GetStat(Faction faction, FactionStat stat)
+	{
+		switch(stat)
+		{
+			case NOTORIETY: return faction.notoriety;
+			case WEALTH: return faction.wealth;
+			case LEGACY: return faction.legacy;
+			case TOTAL: return faction.legacy + faction.notoriety + faction.wealth;
+		}
+		return 0;
+	}
 	
 	public void RegisterFaction(Faction faction)
 	{
-		mFactions.add(faction);
+		for(FactionStat stat : FactionStat.values())
+			mRankings.get(stat).add(faction, GetStat(faction, stat));
 	}
 	
 	public void UnregisterFaction(Faction faction) 
 	{
-		mFactions.remove(faction);
+		for(FactionRanking ranking : mRankings.values())
+			ranking.remove(faction);
+	}
+	
+	// Call whenever notoriety, wealth or legacy change. Only factions already registered are ranked
+	public void UpdateFaction(Faction faction)
+	{
+		for(FactionStat stat : FactionStat.values())
+			mRankings.get(stat).update(faction, GetStat(faction, stat));
+	}
+	
+	public void Clear()
+	{
+		for(FactionRanking ranking : mRankings.values())
+			ranking.clear();
 	}
 	
 	public List<Faction> GetSortedList(FactionStat stat, List<Faction> optionalTarget)
 	{
-		Comparator<Faction> sorter = GetSorter(stat);
-		if(optionalTarget != null)
-		{
-			optionalTarget.addAll(mFactions);
-			optionalTarget.sort(sorter);
-			return optionalTarget;
-		}
-		else
-		{
-			mFactions.sort(sorter);
-			return mFactions;
-		}
+		List<Faction> target = optionalTarget != null ? optionalTarget : new ArrayList<Faction>(mRankings.get(stat).size());
+		mRankings.get(stat).getAll(target);
+		return target;
+	}
+	
+	// Zero-indexed, or null if there aren't that many factions
+	public Faction GetFactionAt(FactionStat stat, int index)
+	{
+		return mRankings.get(stat).get(index);
 	}
 	
 	public int GetOneIndexedRankOf(Faction faction, FactionStat stat)
@@ -105,18 +137,13 @@ public class Leaderboard
 	
 	public int GetZeroIndexedRankOf(Faction faction, FactionStat stat)
 	{
-		int numBetterFactions = 0;
-		Comparator<Faction> sorter = GetSorter(stat);
+		FactionRanking ranking = mRankings.get(stat);
+		// Catch any stat change that didn't go through UpdateFaction
+		int value = GetStat(faction, stat);
+		if(ranking.contains(faction) && ranking.getRankedValue(faction) != value)
+			ranking.update(faction, value);
 		
-		for(Faction other : mFactions)
-		{
-			if(sorter.compare(faction, other) > 0)
-			{
-				numBetterFactions++;
-			}
-		}
-		
-		return numBetterFactions;
+		return ranking.countBetterThan(value);
 	}
 	
 	public LeaderboardInfo CreateInfo(int firstIndex, FactionStat stat, UUID playerAsking)
@@ -131,14 +158,13 @@ public class Leaderboard
 			if(faction != null)
 				info.myFaction = faction.createInfo();
 		}
-		ArrayList<Faction> sorted = new ArrayList<Faction>(mFactions.size());
-		GetSortedList(stat, sorted);
 		for(int i = firstIndex; i < firstIndex + LeaderboardInfo.NUM_LEADERBOARD_ENTRIES_PER_PAGE; i++)
 		{
 			// Only fill in in-range ones, leave rest null, handle on client
-			if(0 <= i && i < sorted.size())
+			Faction faction = GetFactionAt(stat, i);
+			if(faction != null)
 			{
-				info.factionInfos[i - firstIndex] = sorted.get(i).createInfo();
+				info.factionInfos[i - firstIndex] = faction.createInfo();
 			}
 		}
 		
@@ -0,0 +1,204 @@
+package com.flansmod.warforge.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+import com.flansmod.warforge.common.WarForgeMod;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.util.math.MathHelper;
+
+// Where every online player is this tick, bucketed by chunk and by faction, so that siege camps can count the
+// players near them without each walking their factions' member lists. Rebuilt on the first query of each tick,
+// after which queries don't allocate. Entries in the same chunk or faction are chained through arrays of indices
+public class OnlinePlayerIndex
+{
+	private static final int NONE = -1;
+
+	private long builtForTick = -1L;
+	private int numPlayers = 0;
+	private EntityPlayerMP[] players = new EntityPlayerMP[16];
+	private int[] dims = new int[16];
+	private int[] chunkXs = new int[16];
+	private int[] chunkZs = new int[16];
+	private Faction[] factions = new Faction[16];
+	private int[] nextInChunk = new int[16];
+	private int[] nextInFaction = new int[16];
+
+	// Chunk key -> first entry in that chunk, open addressing with linear probing
+	private long[] chunkKeys = new long[32];
+	private int[] chunkHeads = new int[32];
+
+	// Faction -> first entry, and how many entries it has
+	private final HashMap<UUID, int[]> factionHeads = new HashMap<UUID, int[]>();
+
+	public void invalidate()
+	{
+		builtForTick = -1L;
+	}
+
+	// Number of living online players of this faction within a square of chunks around the given chunk
+	public int countInRadius(Faction faction, int dim, int chunkX, int chunkZ, int radius)
+	{
+		return count(faction, dim, chunkX, chunkZ, radius, Integer.MAX_VALUE);
+	}
+
+	public boolean anyInRadius(Faction faction, int dim, int chunkX, int chunkZ, int radius)
+	{
+		return count(faction, dim, chunkX, chunkZ, radius, 1) > 0;
+	}
+
+	private int count(Faction faction, int dim, int chunkX, int chunkZ, int radius, int stopAt)
+	{
+		if(faction == null)
+			return 0;
+		ensureBuilt();
+
+		int[] factionHead = factionHeads.get(faction.uuid);
+		if(factionHead == null)
+			return 0;
+
+		int count = 0;
+		int side = 2 * radius + 1;
+		// Whichever is fewer, the faction's online players or the chunks in the square
+		if(factionHead[1] <= side * side)
+		{
+			for(int i = factionHead[0]; i != NONE && count < stopAt; i = nextInFaction[i])
+			{
+				if(dims[i] == dim
+					&& Math.abs(chunkXs[i] - chunkX) <= radius
+					&& Math.abs(chunkZs[i] - chunkZ) <= radius
+					&& !players[i].isDead)
+					count++;
+			}
+		}
+		else
+		{
+			for(int x = chunkX - radius; x <= chunkX + radius && count < stopAt; x++)
+			{
+				for(int z = chunkZ - radius; z <= chunkZ + radius && count < stopAt; z++)
+				{
+					for(int i = getChunkHead(ClaimIndex.pack(dim, x, z)); i != NONE && count < stopAt; i = nextInChunk[i])
+					{
+						// Chunk keys only hold 22 bits per coordinate, so check the real position too
+						if(dims[i] == dim && chunkXs[i] == x && chunkZs[i] == z
+							&& factions[i] == faction
+							&& !players[i].isDead)
+							count++;
+					}
+				}
+			}
+		}
+		return Math.min(count, stopAt);
+	}
+
+	private void ensureBuilt()
+	{
+		if(builtForTick == WarForgeMod.serverTick)
+			return;
+		builtForTick = WarForgeMod.serverTick;
+
+		factionHeads.clear();
+		numPlayers = 0;
+		if(WarForgeMod.MC_SERVER == null)
+			return;
+
+		List<EntityPlayerMP> online = WarForgeMod.MC_SERVER.getPlayerList().getPlayers();
+		ensureCapacity(online.size());
+		Arrays.fill(chunkHeads, NONE);
+
+		for(EntityPlayerMP player : online)
+		{
+			int i = numPlayers++;
+			players[i] = player;
+			dims[i] = player.dimension;
+			chunkXs[i] = MathHelper.floor(player.posX) >> 4;
+			chunkZs[i] = MathHelper.floor(player.posZ) >> 4;
+
+			nextInChunk[i] = insertChunkHead(ClaimIndex.pack(dims[i], chunkXs[i], chunkZs[i]), i);
+
+			nextInFaction[i] = NONE;
+			Faction faction = WarForgeMod.FACTIONS.getFactionOfPlayer(player.getUniqueID());
+			factions[i] = faction;
+			if(faction != null)
+			{
+				int[] factionHead = factionHeads.get(faction.uuid);
+				if(factionHead == null)
+				{
+					factionHead = new int[] { NONE, 0 };
+					factionHeads.put(faction.uuid, factionHead);
+				}
+				nextInFaction[i] = factionHead[0];
+				factionHead[0] = i;
+				factionHead[1]++;
+			}
+		}
+
+		// Don't hold on to players that have logged out
+		Arrays.fill(players, numPlayers, players.length, null);
+		Arrays.fill(factions, numPlayers, factions.length, null);
+	}
+
+	private void ensureCapacity(int numOnline)
+	{
+		if(numOnline > players.length)
+		{
+			int capacity = Math.max(numOnline, players.length * 2);
+			players = new EntityPlayerMP[capacity];
+			dims = new int[capacity];
+			chunkXs = new int[capacity];
+			chunkZs = new int[capacity];
+			factions = new Faction[capacity];
+			nextInChunk = new int[capacity];
+			nextInFaction = new int[capacity];
+		}
+
+		// Keep the chunk table at most half full
+		if(numOnline * 2 > chunkKeys.length)
+		{
+			int capacity = Integer.highestOneBit(numOnline * 2) << 1;
+			chunkKeys = new long[capacity];
+			chunkHeads = new int[capacity];
+		}
+	}
+
+	// Puts the entry at the head of its chunk's chain, returning the previous head
+	private int insertChunkHead(long key, int entry)
+	{
+		int mask = chunkKeys.length - 1;
+		for(int slot = hash(key) & mask; ; slot = (slot + 1) & mask)
+		{
+			if(chunkHeads[slot] == NONE)
+			{
+				chunkKeys[slot] = key;
+				chunkHeads[slot] = entry;
+				return NONE;
+			}
+			if(chunkKeys[slot] == key)
+			{
+				int previous = chunkHeads[slot];
+				chunkHeads[slot] = entry;
+				return previous;
+			}
+		}
+	}
+
+	private int getChunkHead(long key)
+	{
+		int mask = chunkKeys.length - 1;
+		for(int slot = hash(key) & mask; chunkHeads[slot] != NONE; slot = (slot + 1) & mask)
+		{
+			if(chunkKeys[slot] == key)
+				return chunkHeads[slot];
+		}
+		return NONE;
+	}
+
+	private static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+}
@@ -8,6 +8,7 @@ import com.flansmod.warforge.common.blocks.IClaim;
 import com.flansmod.warforge.common.blocks.TileEntitySiegeCamp;
 import com.flansmod.warforge.common.network.SiegeCampProgressInfo;
 import com.flansmod.warforge.server.Faction.PlayerData;
+import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
@@ -15,6 +16,7 @@ import net.minecraft.nbt.NBTTagIntArray;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextComponentTranslation;
@@ -56,7 +58,11 @@ public class Siege {
 	
 	// Attack progress starts at 0 and can be moved to -5 or mAttackSuccessThreshold
 	public int GetAttackProgress() { return mAttackProgress; }
-	public void setAttackProgress(int progress) { mAttackProgress = progress; }
+	public void setAttackProgress(int progress)
+	{
+		mAttackProgress = progress;
+		WarForgeMod.JOURNAL.recordSiegeProgress(mDefendingClaim.toChunkPos(), mAttackProgress);
+	}
 
 	public int GetDefenceProgress() { return -mAttackProgress; }
 	public int GetAttackSuccessThreshold() { return mBaseDifficulty + mExtraDifficulty; }
@@ -287,13 +293,16 @@ public class Siege {
 	}
 
     private boolean isPlayerInWarzone(DimBlockPos siegeCampPos, EntityPlayerMP player) {
-		// convert siege camp pos to chunk pos and player to chunk pos for clarity
-		DimChunkPos siegeCampChunkPos = siegeCampPos.toChunkPos();
-		DimChunkPos playerChunkPos = new DimChunkPos(player.dimension, player.getPosition());
-
-        return isPlayerInRadius(siegeCampChunkPos, playerChunkPos);
+        return isPlayerInRadius(siegeCampPos.dim, siegeCampPos.getX() >> 4, siegeCampPos.getZ() >> 4, player, 1);
     }
 
+	// Same as below, without making chunk positions
+	public static boolean isPlayerInRadius(int dim, int centerChunkX, int centerChunkZ, EntityPlayer player, int radius) {
+		return player.dimension == dim
+				&& Math.abs((MathHelper.floor(player.posX) >> 4) - centerChunkX) <= radius
+				&& Math.abs((MathHelper.floor(player.posZ) >> 4) - centerChunkZ) <= radius;
+	}
+
 	public static boolean isPlayerInRadius(DimChunkPos centerChunkPos, DimChunkPos playerChunkPos) {
 		return isPlayerInRadius(centerChunkPos, playerChunkPos, 1);
 	}
@@ -344,6 +353,7 @@ public class Siege {
 
 		// update progress appropriately; either valid attack, or def by this point, so state of one bool implies the state of the other
 		mAttackProgress += attackValid ? WarForgeConfig.SIEGE_SWING_PER_DEFENDER_DEATH : -WarForgeConfig.SIEGE_SWING_PER_ATTACKER_DEATH;
+		WarForgeMod.JOURNAL.recordSiegeProgress(mDefendingClaim.toChunkPos(), mAttackProgress);
 		WarForgeMod.FACTIONS.SendSiegeInfoToNearby(mDefendingClaim.toChunkPos());
 
 		// build notification